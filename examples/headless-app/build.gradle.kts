@@ -43,9 +43,11 @@ dist {
     }
     linux64Directory("sjl-headless-linux-dir"){
         config("config/config.yml", "config.yml")
+        generateExecutable()
     }
     linux64Archive("sjl-headless-linux-archive"){
         config("config/config.yml", "config.yml")
+        generateExecutable()
         archiveType = DistributionArchiveType.TARGZ
     }
 }
@@ -0,0 +1,239 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.gradle.dist
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.logging.Logger
+import org.gradle.api.tasks.TaskAction
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.security.MessageDigest
+import java.util.zip.GZIPOutputStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+import javax.inject.Inject
+
+/*
+ * patch format has to be in sync with com.vga.sjl.restart.SjlDeltaPatch of the launcher
+ */
+private const val PATCH_MAGIC = 0x534A4C44
+private const val PATCH_VERSION = 1
+private const val COMMAND_END = 0
+private const val COMMAND_COPY = 1
+private const val COMMAND_DATA = 2
+
+private fun sha256(data: ByteArray): ByteArray = MessageDigest.getInstance("SHA-256").digest(data)
+
+private fun toHex(data: ByteArray) = data.joinToString("") { String.format("%02x", it) }
+
+private fun blockEquals(old: ByteArray, oldOffset: Int, new: ByteArray, newOffset: Int, length: Int): Boolean {
+    for (n in 0 until length) {
+        if (old[oldOffset + n] != new[newOffset + n]) {
+            return false
+        }
+    }
+    return true
+}
+
+private class PatchWriter(private val out: DataOutputStream) {
+    private var copyOffset = -1L
+    private var copyLength = 0
+
+    fun copy(offset: Long, length: Int) {
+        if (copyOffset >= 0 && copyOffset + copyLength == offset && copyLength.toLong() + length <= Int.MAX_VALUE) {
+            copyLength += length
+            return
+        }
+        flushCopy()
+        copyOffset = offset
+        copyLength = length
+    }
+
+    fun data(data: ByteArray, offset: Int, length: Int) {
+        if (length == 0) {
+            return
+        }
+        flushCopy()
+        out.writeByte(COMMAND_DATA)
+        out.writeInt(length)
+        out.write(data, offset, length)
+    }
+
+    fun end() {
+        flushCopy()
+        out.writeByte(COMMAND_END)
+    }
+
+    private fun flushCopy() {
+        if (copyOffset >= 0) {
+            out.writeByte(COMMAND_COPY)
+            out.writeLong(copyOffset)
+            out.writeInt(copyLength)
+            copyOffset = -1
+        }
+    }
+}
+
+/*
+ * rsync-like delta: blocks of the old file are indexed by weak rolling checksum, the new file is scanned
+ * byte by byte, blocks with equal checksum are compared and matched blocks are extended forward
+ */
+fun createPatch(old: ByteArray, new: ByteArray, patchFile: File, blockSize: Int) {
+    val index = HashMap<Int, MutableList<Int>>()
+    var offset = 0
+    while (offset + blockSize <= old.size) {
+        var a = 0
+        var b = 0
+        for (n in 0 until blockSize) {
+            val x = old[offset + n].toInt() and 0xFF
+            a += x
+            b += (blockSize - n) * x
+        }
+        index.getOrPut(((b and 0xFFFF) shl 16) or (a and 0xFFFF)) { arrayListOf() }.add(offset)
+        offset += blockSize
+    }
+    DataOutputStream(BufferedOutputStream(GZIPOutputStream(patchFile.outputStream()))).use { out ->
+        out.writeInt(PATCH_MAGIC)
+        out.writeInt(PATCH_VERSION)
+        out.writeLong(new.size.toLong())
+        out.write(sha256(new))
+        val writer = PatchWriter(out)
+        var literalStart = 0
+        var pos = 0
+        var a = 0
+        var b = 0
+        var rolling = false
+        while (pos + blockSize <= new.size) {
+            if (!rolling) {
+                a = 0
+                b = 0
+                for (n in 0 until blockSize) {
+                    val x = new[pos + n].toInt() and 0xFF
+                    a += x
+                    b += (blockSize - n) * x
+                }
+                rolling = true
+            }
+            val match = index[((b and 0xFFFF) shl 16) or (a and 0xFFFF)]?.firstOrNull { blockEquals(old, it, new, pos, blockSize) }
+            if (match != null) {
+                writer.data(new, literalStart, pos - literalStart)
+                var length = blockSize
+                while (pos + length < new.size && match + length < old.size && new[pos + length] == old[match + length]) {
+                    length++
+                }
+                writer.copy(match.toLong(), length)
+                pos += length
+                literalStart = pos
+                rolling = false
+            } else {
+                val removed = new[pos].toInt() and 0xFF
+                if (pos + blockSize < new.size) {
+                    val added = new[pos + blockSize].toInt() and 0xFF
+                    a = a - removed + added
+                    b = b - blockSize * removed + a
+                }
+                pos++
+            }
+        }
+        writer.data(new, literalStart, new.size - literalStart)
+        writer.end()
+    }
+}
+
+private fun listFiles(root: File): Map<String, File> {
+    return root.walkTopDown().filter { it.isFile }.associateBy { it.relativeTo(root).invariantSeparatorsPath }.toSortedMap()
+}
+
+/*
+ * bundle is a zip with update.lst that lists PATCH, ADD and DELETE operations with relative paths,
+ * patches are stored under patches/ and new files under files/
+ */
+fun createUpdateBundle(oldDirectory: File, newDirectory: File, bundleFile: File, config: DeltaConfig, logger: Logger) {
+    val oldFiles = listFiles(oldDirectory)
+    val newFiles = listFiles(newDirectory)
+    val list = StringBuilder()
+    var fullSize = 0L
+    var bundleSize = 0L
+    val tempPatch = File(bundleFile.parentFile, "${bundleFile.name}.patch.tmp")
+    ZipOutputStream(BufferedOutputStream(bundleFile.outputStream())).use { zos ->
+        newFiles.forEach { (path, file) ->
+            if (config.excluded.any { path.startsWith(it) }) {
+                return@forEach
+            }
+            val newData = file.readBytes()
+            val hash = toHex(sha256(newData))
+            fullSize += newData.size
+            val oldFile = oldFiles[path]
+            if (oldFile != null) {
+                val oldData = oldFile.readBytes()
+                if (newData.contentEquals(oldData)) {
+                    return@forEach
+                }
+                createPatch(oldData, newData, tempPatch, config.blockSize)
+                if (tempPatch.length() < newData.size * config.maxPatchRatio) {
+                    zos.putNextEntry(ZipEntry("patches/$path"))
+                    tempPatch.inputStream().use { it.copyTo(zos) }
+                    zos.closeEntry()
+                    list.append("PATCH\t$path\t$hash\n")
+                    bundleSize += tempPatch.length()
+                    logger.info("$path: patch ${tempPatch.length()} bytes, file ${newData.size} bytes")
+                    return@forEach
+                }
+            }
+            zos.putNextEntry(ZipEntry("files/$path"))
+            zos.write(newData)
+            zos.closeEntry()
+            list.append("ADD\t$path\t$hash\n")
+            bundleSize += newData.size
+        }
+        oldFiles.keys.filter { !newFiles.containsKey(it) && config.excluded.none { excluded -> it.startsWith(excluded) } }.forEach {
+            list.append("DELETE\t$it\n")
+        }
+        zos.putNextEntry(ZipEntry("update.lst"))
+        zos.write(list.toString().toByteArray(Charsets.UTF_8))
+        zos.closeEntry()
+    }
+    tempPatch.delete()
+    logger.lifecycle("update bundle ${bundleFile.name}: ${bundleSize} bytes of changes instead of ${fullSize} bytes")
+}
+
+open class SjlDeltaTask: DefaultTask {
+    private val config: DeltaConfig
+    private val commonConfig: SjlDistCommonConfig
+
+    @Inject
+    constructor(config: DeltaConfig, commonConfig: SjlDistCommonConfig) : super() {
+        this.config = config
+        this.commonConfig = commonConfig
+        group = "dist"
+        dependsOn(config.dependsOnTasks.toArray())
+    }
+
+    @TaskAction
+    fun doAction() {
+        val oldDirectory = project.file(config.oldDirectory ?: throw IllegalStateException("old distribution directory is not defined"))
+        val newDirectory = project.file(config.newDirectory ?: throw IllegalStateException("new distribution directory is not defined"))
+        val dir = ensureDirectoryExists(project, "../dist/${name}", true)
+        createUpdateBundle(oldDirectory, newDirectory, File(dir, "${commonConfig.appName}-update.zip"), config, logger)
+    }
+}
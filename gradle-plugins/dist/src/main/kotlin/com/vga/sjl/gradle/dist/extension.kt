@@ -87,6 +87,7 @@ interface JreDownloadHandler {
 open class SjlDistExtension @Inject constructor(private  val project: Project) {
     internal val commonConfig:SjlDistCommonConfig
     internal val distributions = arrayListOf<BaseDistributionConfig>()
+    internal val deltas = arrayListOf<DeltaConfig>()
 
     init {
         this.commonConfig= SjlDistCommonConfig(project)
@@ -107,6 +108,12 @@ open class SjlDistExtension @Inject constructor(private  val project: Project) {
         dist.configure()
         distributions.add(dist)
     }
+
+    fun delta(name:String, configure:DeltaConfig.()->Unit){
+        val delta = DeltaConfig(name)
+        delta.configure()
+        deltas.add(delta)
+    }
 }
 
 @SjlDistConfigMaker
@@ -134,6 +141,8 @@ abstract class BaseDistributionConfig(internal val project: Project, val name:St
     internal var configLocation:Pair<String,String>? = null
     internal var assetsList = arrayListOf<Pair<String, CopySpec>>()
     internal var executableConfig:ExecutableConfig? = null
+    internal var mergedJarConfig:MergedJarConfig? = null
+    internal var jlinkConfig:JlinkConfig? = null
     fun assets(destDir:String, configure:CopySpec.()->Unit){
         val spec = project.copySpec()
         spec.configure()
@@ -146,6 +155,14 @@ abstract class BaseDistributionConfig(internal val project: Project, val name:St
         executableConfig = ExecutableConfig();
         executableConfig!!.configure()
     }
+    fun mergeClasspath(configure:MergedJarConfig.()->Unit = {}){
+        mergedJarConfig = MergedJarConfig()
+        mergedJarConfig!!.configure()
+    }
+    fun trimJre(configure:JlinkConfig.()->Unit = {}){
+        jlinkConfig = JlinkConfig()
+        jlinkConfig!!.configure()
+    }
     abstract fun getType():DistributionType
 }
 
@@ -154,6 +171,40 @@ class ExecutableConfig {
     var location: String? = null
 }
 
+@SjlDistConfigMaker
+class MergedJarConfig {
+    var jarName: String? = null
+    var failOnConflict = false
+    var excludedResources = arrayListOf<String>()
+}
+
+/*
+ * runtime image is built with jlink from modules reported by jdeps for the lib folder,
+ * java.management, jdk.management and jdk.jfr are always added for launcher diagnostics,
+ * applies only if downloaded runtime is 11 or newer, otherwise the runtime is copied as is
+ */
+@SjlDistConfigMaker
+class JlinkConfig {
+    var additionalModules = arrayListOf<String>()
+    var stripDebug = true
+    var compress = "2"
+    var generateCdsArchive = true
+}
+
+/*
+ * update bundle with binary patches between two distribution directories,
+ * patch is used only if it is smaller than maxPatchRatio of the new file
+ */
+@SjlDistConfigMaker
+class DeltaConfig(val name:String) {
+    var oldDirectory:String? = null
+    var newDirectory:String? = null
+    var blockSize = 2048
+    var maxPatchRatio = 0.7
+    var excluded = arrayListOf<String>()
+    var dependsOnTasks = arrayListOf<String>()
+}
+
 @SjlDistConfigMaker
 open class Linux64DirectoryDistributionConfig (project: Project, name:String): BaseDistributionConfig(project, name) {
     override fun getType() = DistributionType.LINUX64_DIRECTORY
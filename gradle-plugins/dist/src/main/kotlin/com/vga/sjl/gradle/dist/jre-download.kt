@@ -58,11 +58,15 @@ class AmazonCorrettoJreDownloadUrlResolver(private val javaVersion:Int) : JreDow
 
     override fun pickFiles(tempDir: File, copySpec: CopySpec) {
         copySpec.from(tempDir.absolutePath)
-        copySpec.include("**/jre/**")
+        // since java 9 there is no separate jre folder inside jdk
+        val strippedSegments = if(javaVersion < 9) 2 else 1
+        if(javaVersion < 9){
+            copySpec.include("**/jre/**")
+        }
         copySpec.includeEmptyDirs=false
         copySpec.eachFile {
             val segs = it.relativePath.segments.toList()
-            val corrected = segs.subList(2, segs.size)
+            val corrected = segs.subList(strippedSegments, segs.size)
             it.path = corrected.joinToString(File.separator)
         }
     }
@@ -127,4 +131,72 @@ fun downloadJre(targetDirectory:File, platform: Platform, config: SjlDistCommonC
     val jre = updateJreCache(platform,config, project)
     ensureDirectoryExists(targetDirectory, true)
     jre.copyRecursively(targetDirectory)
-}
\ No newline at end of file
+}
+
+private fun getRuntimeVersion(runtimeDirectory: File): Int {
+    val releaseFile = File(runtimeDirectory, "release")
+    if(!releaseFile.exists()){
+        return -1
+    }
+    val version = releaseFile.readLines().firstOrNull { it.startsWith("JAVA_VERSION=") }
+        ?.substringAfter("=")?.trim('"')?:return -1
+    val parts = version.split('.', '_', '-', '+')
+    return (if(parts[0] == "1") parts.getOrNull(1) else parts[0])?.toIntOrNull()?:-1
+}
+
+private fun runTool(command: List<String>): String {
+    val process = ProcessBuilder(command).redirectErrorStream(true).start()
+    val output = process.inputStream.bufferedReader().use { it.readText() }
+    val exitCode = process.waitFor()
+    if(exitCode != 0){
+        throw IllegalStateException("${command.first()} finished with exit code ${exitCode}:\n${output}")
+    }
+    return output
+}
+
+/*
+ * builds runtime image with modules required by the jars of libDirectory,
+ * returns false if downloaded runtime can not be trimmed, in that case it has to be copied as is
+ */
+fun buildTrimmedJre(targetDirectory:File, libDirectory: File, platform: Platform, config: SjlDistCommonConfig, jlinkConfig: JlinkConfig, project: Project): Boolean {
+    val jdk = updateJreCache(platform, config, project)
+    val version = getRuntimeVersion(jdk)
+    if(version < 11){
+        project.logger.warn("runtime image can be trimmed only for java 11 or newer, downloaded runtime is copied as is")
+        return false
+    }
+    val jmods = File(jdk, "jmods")
+    if(!jmods.exists() || !System.getProperty("os.name").lowercase().contains("linux")){
+        project.logger.warn("jlink requires jmods of the downloaded jdk and linux build host, downloaded runtime is copied as is")
+        return false
+    }
+    val jars = libDirectory.listFiles { file -> file.name.endsWith(".jar") }?.map { it.absolutePath }?.sorted()?: emptyList()
+    val modules = sortedSetOf<String>()
+    if(jars.isNotEmpty()){
+        val jdepsCommand = arrayListOf(File(jdk, "bin/jdeps").absolutePath, "--ignore-missing-deps", "--print-module-deps", "-q",
+            "--multi-release", version.toString(), "--class-path", jars.joinToString(File.pathSeparator))
+        jdepsCommand.addAll(jars)
+        runTool(jdepsCommand).lines().last { it.isNotBlank() }.split(',').forEach { modules.add(it.trim()) }
+    }
+    modules.addAll(jlinkConfig.additionalModules)
+    modules.add("java.base")
+    // launcher diagnostics look up DiagnosticCommand MBean and start flight recordings by name, jdeps can not see it
+    modules.addAll(listOf("java.management", "jdk.management", "jdk.jfr"))
+    if(targetDirectory.exists()){
+        targetDirectory.deleteRecursively()
+    }
+    ensureDirectoryExists(targetDirectory.parentFile, false)
+    val jlinkCommand = arrayListOf(File(jdk, "bin/jlink").absolutePath, "--module-path", jmods.absolutePath,
+        "--add-modules", modules.joinToString(","), "--no-header-files", "--no-man-pages", "--compress=${jlinkConfig.compress}",
+        "--output", targetDirectory.absolutePath)
+    if(jlinkConfig.stripDebug){
+        jlinkCommand.add("--strip-debug")
+    }
+    // --generate-cds-archive plugin is available since java 17
+    if(jlinkConfig.generateCdsArchive && version >= 17){
+        jlinkCommand.add("--generate-cds-archive")
+    }
+    runTool(jlinkCommand)
+    project.logger.lifecycle("runtime image with modules ${modules.joinToString(",")} is created")
+    return true
+}
@@ -45,11 +45,22 @@ abstract class BaseLinux64DistTask<T:Linux64DirectoryDistributionConfig>(): Defa
     open fun doAction(){
         ensureDirectoryExists(project, "../dist/${name}", true)
         val dir = ensureDirectoryExists(project, "../dist/${name}/${commonConfig.appName}", true)
-        downloadJre(File(dir, commonConfig.jreRelativePath), Platform.LINUX64, commonConfig, project)
+        val jlinkConfig = taskConfig.jlinkConfig
+        if(jlinkConfig == null) {
+            downloadJre(File(dir, commonConfig.jreRelativePath), Platform.LINUX64, commonConfig, project)
+        }
         val libDir = ensureDirectoryExists(File(dir, commonConfig.libRelativePath), true)
         val component = JavaPluginHelper.getJavaComponent(project)
         val files = component.mainJarTask.get().outputs.files.plus(component.runtimeClasspathConfiguration)
-        files.forEach { it.copyTo(File(libDir, it.name))}
+        val mergedJarConfig = taskConfig.mergedJarConfig
+        if(mergedJarConfig != null){
+            mergeJars(files.files.toList(), File(libDir, mergedJarConfig.jarName?:"${commonConfig.appName}.jar"), mergedJarConfig, logger)
+        } else {
+            files.forEach { it.copyTo(File(libDir, it.name))}
+        }
+        if(jlinkConfig != null && !buildTrimmedJre(File(dir, commonConfig.jreRelativePath), libDir, Platform.LINUX64, commonConfig, jlinkConfig, project)) {
+            downloadJre(File(dir, commonConfig.jreRelativePath), Platform.LINUX64, commonConfig, project)
+        }
         commonConfig.assetsList.forEach {pair ->
             project.copy {
                 it.with(pair.second)
@@ -59,8 +70,52 @@ abstract class BaseLinux64DistTask<T:Linux64DirectoryDistributionConfig>(): Defa
         taskConfig.configLocation?.let {
             project.file(it.first).copyTo(File(dir, it.second))
         }
+        taskConfig.executableConfig?.let {
+            writeStartScript(File(dir, it.location?:"${commonConfig.appName}.sh"), dir, libDir, commonConfig)
+        }
     }
 }
+
+/*
+ * the script runs the launcher from the distribution directory, so relative paths of the configuration resolve against it;
+ * once a CDS archive is trained (sjl.cds) the launcher copies its argument file to sjl-cds.options there, the name
+ * has to be in sync with com.vga.sjl.cds.SjlCdsSupport. The launcher is started again when it exits with code 2,
+ * TERM and INT are forwarded to it. A handover successor is not a child of the script, handover mode needs
+ * a process manager that follows the main pid instead.
+ */
+private fun writeStartScript(script:File, dir:File, libDir:File, commonConfig:SjlDistCommonConfig){
+    val launcherJar = libDir.listFiles()?.filter { it.name.startsWith("launcher") && it.name.endsWith(".jar") }?.firstOrNull()
+        ?: libDir.listFiles()?.filter { it.name.endsWith(".jar") }?.singleOrNull()
+        ?: throw IllegalStateException("launcher jar is not found in ${libDir.absolutePath}")
+    val java = "${commonConfig.jreRelativePath}/bin/java"
+    val classpath = launcherJar.relativeTo(dir).invariantSeparatorsPath
+    script.parentFile.mkdirs()
+    val root = dir.relativeTo(script.parentFile).invariantSeparatorsPath
+    script.writeText("""
+        |#!/bin/sh
+        |cd "${'$'}(dirname "${'$'}0")${if(root.isEmpty()) "" else "/$root"}" || exit 1
+        |# exit code 2 is a restart request, pending restart operations are applied by the next launcher
+        |while true; do
+        |  if [ -f sjl-cds.options ]; then
+        |    $java @sjl-cds.options -cp $classpath com.vga.sjl.SjlBoot "${'$'}@" 0<&0 &
+        |  else
+        |    $java -cp $classpath com.vga.sjl.SjlBoot "${'$'}@" 0<&0 &
+        |  fi
+        |  pid=${'$'}!
+        |  trap 'kill -TERM ${'$'}pid 2>/dev/null' TERM INT
+        |  wait ${'$'}pid
+        |  code=${'$'}?
+        |  # wait is interrupted by a forwarded signal, the launcher is still stopping
+        |  while kill -0 ${'$'}pid 2>/dev/null; do
+        |    wait ${'$'}pid
+        |    code=${'$'}?
+        |  done
+        |  trap - TERM INT
+        |  [ ${'$'}code -eq 2 ] || exit ${'$'}code
+        |done
+        |""".trimMargin())
+    script.setExecutable(true, false)
+}
 open class Linux64DirectoryDistTask: BaseLinux64DistTask<Linux64DirectoryDistributionConfig>{
     @Inject
     constructor(taskConfig:Linux64DirectoryDistributionConfig, commonConfig:SjlDistCommonConfig) : super(taskConfig, commonConfig)
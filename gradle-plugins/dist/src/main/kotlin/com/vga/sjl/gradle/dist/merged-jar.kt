@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.gradle.dist
+
+import org.gradle.api.GradleException
+import org.gradle.api.logging.Logger
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.InputStream
+import java.util.jar.Attributes
+import java.util.jar.JarFile
+import java.util.jar.Manifest
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipOutputStream
+
+private class MergedEntry(val source: File, val size: Long, val crc: Long)
+
+private fun isSkippedEntry(name: String): Boolean {
+    if (name == "module-info.class" || name.startsWith("META-INF/versions/") && name.endsWith("/module-info.class")) {
+        return true
+    }
+    if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length) != -1) {
+        return false
+    }
+    return name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC")
+}
+
+private fun computeCrc(ins: InputStream): Pair<Long, Long> {
+    val crc = CRC32()
+    val buf = ByteArray(64 * 1024)
+    var size = 0L
+    while (true) {
+        val len = ins.read(buf)
+        if (len == -1) {
+            break
+        }
+        crc.update(buf, 0, len)
+        size += len
+    }
+    return Pair(size, crc.value)
+}
+
+private fun writeStored(zos: ZipOutputStream, name: String, content: ByteArray) {
+    val crc = CRC32()
+    crc.update(content)
+    val entry = ZipEntry(name)
+    entry.method = ZipEntry.STORED
+    entry.size = content.size.toLong()
+    entry.compressedSize = content.size.toLong()
+    entry.crc = crc.value
+    zos.putNextEntry(entry)
+    zos.write(content)
+    zos.closeEntry()
+}
+
+/*
+ * Merges jars into one jar with STORED entries, so classes can be read without inflating.
+ * First jar wins for duplicate resources, service descriptors are concatenated, signatures and module descriptors are dropped,
+ * META-INF/INDEX.LIST with all packages of the merged jar is generated.
+ */
+fun mergeJars(sources: List<File>, target: File, config: MergedJarConfig, logger: Logger) {
+    val entries = LinkedHashMap<String, MergedEntry>()
+    val services = LinkedHashMap<String, ByteArrayOutputStream>()
+    val directories = LinkedHashSet<String>()
+    val conflicts = arrayListOf<String>()
+    var manifest: Manifest? = null
+    sources.forEach { source ->
+        ZipFile(source).use { zip ->
+            zip.entries().asSequence().forEach { entry ->
+                val name = entry.name
+                when {
+                    entry.isDirectory -> directories.add(name)
+                    isSkippedEntry(name) -> {}
+                    name == JarFile.MANIFEST_NAME -> {
+                        if (manifest == null) {
+                            manifest = zip.getInputStream(entry).use { Manifest(it) }
+                        }
+                    }
+                    name.startsWith("META-INF/services/") -> {
+                        val content = services.getOrPut(name) { ByteArrayOutputStream() }
+                        if (content.size() > 0) {
+                            content.write('\n'.code)
+                        }
+                        zip.getInputStream(entry).use { it.copyTo(content) }
+                    }
+                    config.excludedResources.contains(name) -> {}
+                    else -> {
+                        val (size, crc) = zip.getInputStream(entry).use { computeCrc(it) }
+                        val existing = entries[name]
+                        if (existing == null) {
+                            entries[name] = MergedEntry(source, size, crc)
+                        } else if (existing.size != size || existing.crc != crc) {
+                            conflicts.add("$name: ${existing.source.name} is used, ${source.name} is ignored")
+                        }
+                    }
+                }
+            }
+        }
+    }
+    if (conflicts.isNotEmpty()) {
+        conflicts.forEach { logger.warn("duplicate resource with different content $it") }
+        if (config.failOnConflict) {
+            throw GradleException("${conflicts.size} conflicting resources found while merging classpath into ${target.name}")
+        }
+    }
+    val packages = LinkedHashSet<String>()
+    entries.keys.forEach {
+        val idx = it.lastIndexOf('/')
+        if (idx > 0 && !it.startsWith("META-INF/")) {
+            packages.add(it.substring(0, idx))
+        }
+    }
+    ensureDirectoryExists(target.parentFile, false)
+    ZipOutputStream(target.outputStream().buffered()).use { zos ->
+        zos.setMethod(ZipOutputStream.STORED)
+        val resultManifest = manifest ?: Manifest().also { it.mainAttributes[Attributes.Name.MANIFEST_VERSION] = "1.0" }
+        resultManifest.mainAttributes.remove(Attributes.Name.CLASS_PATH)
+        writeStored(zos, "META-INF/", ByteArray(0))
+        writeStored(zos, JarFile.MANIFEST_NAME, ByteArrayOutputStream().also { resultManifest.write(it) }.toByteArray())
+        val index = StringBuilder("JarIndex-Version: 1.0\n\n").append(target.name).append('\n')
+        packages.forEach { index.append(it).append('\n') }
+        index.append('\n')
+        writeStored(zos, "META-INF/INDEX.LIST", index.toString().toByteArray(Charsets.UTF_8))
+        directories.filter { it != "META-INF/" }.forEach { writeStored(zos, it, ByteArray(0)) }
+        services.forEach { (name, content) -> writeStored(zos, name, content.toByteArray()) }
+        sources.forEach { source ->
+            ZipFile(source).use { zip ->
+                zip.entries().asSequence().forEach { entry ->
+                    val merged = entries[entry.name]
+                    if (merged != null && merged.source == source) {
+                        val zipEntry = ZipEntry(entry.name)
+                        zipEntry.method = ZipEntry.STORED
+                        zipEntry.size = merged.size
+                        zipEntry.compressedSize = merged.size
+                        zipEntry.crc = merged.crc
+                        zos.putNextEntry(zipEntry)
+                        zip.getInputStream(entry).use { it.copyTo(zos) }
+                        zos.closeEntry()
+                    }
+                }
+            }
+        }
+    }
+    logger.lifecycle("merged ${sources.size} jars into ${target.name}: ${entries.size} entries, ${conflicts.size} conflicts")
+}
@@ -43,4 +43,7 @@ fun Project.dist(configure: SjlDistExtension.() -> Unit) {
             DistributionType.LINUX64_ARCHIVE -> this.tasks.create("dist-${it.name}", Linux64ArchiveDistTask::class.java, it, extension.commonConfig)
         }
     }
+    extension.deltas.forEach {
+        this.tasks.create("delta-${it.name}", SjlDeltaTask::class.java, it, extension.commonConfig)
+    }
 }
\ No newline at end of file
@@ -21,6 +21,7 @@
 
 package com.vga.sjl;
 
+import com.vga.sjl.metrics.Counter;
 import com.vga.sjl.restart.RestartOperation;
 
 import java.util.List;
@@ -28,4 +29,25 @@ import java.util.List;
 public interface ApplicationCallback {
     void stop();
     void restart(List<RestartOperation> operations);
+
+    /*
+     * opens a timed phase that is added to the boot report, phases opened inside Application.start are nested into it
+     */
+    default BootPhase startPhase(String name) {
+        return () -> {
+        };
+    }
+
+    /*
+     * returns counter exposed by METRICS control command and metrics http listener, counters with the same name are shared
+     */
+    default Counter counter(String name, String help) {
+        return new Counter(name, help);
+    }
+
+    /*
+     * registers a hook that is called in parallel with other hooks on shutdown after the drain phase, before Application.stop
+     */
+    default void addStopHook(String name, StopHook hook) {
+    }
 }
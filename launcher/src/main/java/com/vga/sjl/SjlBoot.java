@@ -21,44 +21,93 @@
 
 package com.vga.sjl;
 
+import com.vga.sjl.boot.SjlBootManifest;
+import com.vga.sjl.boot.SjlBootReport;
+import com.vga.sjl.boot.SjlHandover;
+import com.vga.sjl.boot.SjlShutdown;
+import com.vga.sjl.boot.SjlJarPrefetcher;
+import com.vga.sjl.cds.SjlCdsSupport;
+import com.vga.sjl.classloader.SjlApplicationClassLoader;
+import com.vga.sjl.classloader.SjlClassLoaderLeakDetector;
+import com.vga.sjl.classloader.SjlIndexedClassLoader;
 import com.vga.sjl.config.AppConfiguration;
+import com.vga.sjl.config.ConfigKey;
+import com.vga.sjl.config.SjlConfigWatcher;
 import com.vga.sjl.control.SjlControlThread;
-import com.vga.sjl.external.org.snakeyaml.engine.v2.api.SjlExtDump;
-import com.vga.sjl.external.org.snakeyaml.engine.v2.api.SjlExtDumpSettings;
-import com.vga.sjl.external.org.snakeyaml.engine.v2.api.SjlExtYamlOutputStreamWriter;
-import com.vga.sjl.external.org.snakeyaml.engine.v2.representer.SjlExtStandardRepresenter;
-import com.vga.sjl.restart.DeleteOperation;
-import com.vga.sjl.restart.MoveOperation;
+import com.vga.sjl.control.SjlFleetClient;
+import com.vga.sjl.diagnostics.SjlDiagnostics;
+import com.vga.sjl.health.SjlHealthMonitor;
+import com.vga.sjl.metrics.Counter;
+import com.vga.sjl.metrics.SjlMetricsRegistry;
 import com.vga.sjl.restart.RestartOperation;
-import com.vga.sjl.restart.SleepOperation;
+import com.vga.sjl.restart.SjlRestartExecutor;
 import com.vga.sjl.utils.SjlUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.net.BindException;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 public class SjlBoot {
     private static final Object lock = new Object();
 
+    private static final AtomicInteger reloadCount = new AtomicInteger();
+
+    private static final ConfigKey<Integer> CONTROL_PORT = ConfigKey.ofInteger("sjl.controlPort", 0);
+
+    private static final ConfigKey<Integer> METRICS_PORT = ConfigKey.ofInteger("sjl.metricsPort", 0);
+
+    // plain numbers are milliseconds
+    private static final ConfigKey<Duration> HANDOVER_TIMEOUT = ConfigKey.ofDuration("sjl.handoverTimeout", Duration.ofMinutes(2));
+
+    private static final ConfigKey<Duration> HEALTH_INTERVAL = ConfigKey.ofDuration("sjl.healthInterval", Duration.ofSeconds(5));
+
+    private static final ConfigKey<Duration> HEALTH_TIMEOUT = ConfigKey.ofDuration("sjl.healthTimeout", Duration.ofSeconds(2));
+
+    private static final ConfigKey<Duration> SHUTDOWN_DRAIN_TIME = ConfigKey.ofDuration("sjl.shutdownDrainTime", Duration.ZERO);
+
+    private static final ConfigKey<Duration> SHUTDOWN_TIMEOUT = ConfigKey.ofDuration("sjl.shutdownTimeout", Duration.ofSeconds(30));
+
+    private static final ConfigKey<Duration> CONFIG_WATCH_DEBOUNCE = ConfigKey.ofDuration("sjl.configWatchDebounce", Duration.ofMillis(500));
+
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "fleet".equals(args[0])) {
+            // fleet mode controls other instances, so it does not need own configuration
+            System.exit(SjlFleetClient.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        SjlBootReport report = new SjlBootReport();
+        BootPhase phase = report.startPhase("configDiscovery");
+        boolean useBootManifest = !"false".equals(getBootstrapValue("sjl.bootManifest", "true"));
+        File bootManifestFile = new File(getBootstrapValue("sjl.tempDirectory", "temp"), "boot.manifest");
+        SjlBootManifest bootManifest = useBootManifest ? SjlBootManifest.load(bootManifestFile) : null;
         String configFileName = System.getenv("sjl.configFile");
         if (configFileName == null) {
             configFileName = System.getProperty("sjl.configFile");
         }
+        boolean configFileDiscovered = configFileName == null;
+        if (configFileName == null && bootManifest != null) {
+            configFileName = bootManifest.getDiscoveredConfigFileName();
+        }
+        List<SjlBootManifest.JarInfo> prefetchJars = bootManifest == null ? null : bootManifest.getPrefetchJars();
+        SjlJarPrefetcher prefetcher = prefetchJars == null ? null : new SjlJarPrefetcher(toFiles(prefetchJars));
         if (configFileName == null && new File(String.format("config%sconfig.yaml",File.separator)).exists()) {
             configFileName = String.format("config%sconfig.yaml",File.separator);
         }
@@ -96,37 +145,71 @@ public class SjlBoot {
         if (!configFile.exists()) {
             throw new IllegalArgumentException(String.format("Config file %s does not exist", configFile.getAbsolutePath()));
         }
+        phase.close();
+        phase = report.startPhase("configParsing");
         AppConfiguration config;
         if (configFileName.endsWith(".properties")) {
             config = AppConfiguration.fromProperties(configFile);
         } else {
             config = AppConfiguration.fromYaml(configFile);
         }
+        phase.close();
         List<String> argsList = Arrays.asList(args);
-        int port = Integer.parseInt(config.computeValue("sjl.controlPort", "0"));
+        int port = CONTROL_PORT.get(config);
+        File controlSocket = null;
+        if ("true".equals(config.computeValue("sjl.controlSocket", "false"))) {
+            if (SjlControlThread.isUnixSocketSupported()) {
+                controlSocket = new File(new File(config.computeValue("sjl.tempDirectory", "temp"), "control"), "control.sock");
+            } else if (port == 0) {
+                Logger.getLogger(SjlBoot.class.getName()).warning("controlSocket requires java 16 or newer");
+            } else {
+                Logger.getLogger(SjlBoot.class.getName()).warning(String.format("controlSocket requires java 16 or newer, controlPort %s is used", port));
+            }
+        }
         if(argsList.contains("stop")){
-            if(port == 0){
-                throw new Exception("stop command is allowed only if controlPort is defined");
+            if(port == 0 && controlSocket == null){
+                throw new Exception("stop command is allowed only if controlPort or controlSocket is defined");
             }
-            if(SjlControlThread.isApplicationRunning(port)){
-                if(!SjlControlThread.stopRunningApplication(port)){
+            if(controlSocket != null ? SjlControlThread.isApplicationRunning(controlSocket) : SjlControlThread.isApplicationRunning(port)){
+                int stopTimeout = (int) SjlShutdown.getStopResponseTimeout(SHUTDOWN_TIMEOUT.get(config).toMillis());
+                if(!(controlSocket != null ? SjlControlThread.stopRunningApplication(controlSocket, stopTimeout) : SjlControlThread.stopRunningApplication(port, stopTimeout))){
                     throw new Exception("unable to stop application");
                 }
             }
             return;
         }
-        if(argsList.contains("status")){
-            if(port == 0){
-                throw new Exception("status command is allowed only if controlPort is defined");
+        if(argsList.contains("metrics")){
+            if(port == 0 && controlSocket == null){
+                throw new Exception("metrics command is allowed only if controlPort or controlSocket is defined");
+            }
+            System.exit(controlSocket != null ? (SjlControlThread.printMetrics(controlSocket) ? 0 : 1) : (SjlControlThread.printMetrics(port) ? 0 : 1));
+        }
+        if(argsList.contains("reload")){
+            if(port == 0 && controlSocket == null){
+                throw new Exception("reload command is allowed only if controlPort or controlSocket is defined");
+            }
+            System.exit(controlSocket != null ? (SjlControlThread.reloadConfiguration(controlSocket) ? 0 : 1) : (SjlControlThread.reloadConfiguration(port) ? 0 : 1));
+        }
+        if(argsList.contains("diagnostics")){
+            if(port == 0 && controlSocket == null){
+                throw new Exception("diagnostics command is allowed only if controlPort or controlSocket is defined");
             }
-            if(SjlControlThread.isApplicationRunning(port)){
-                System.exit(0);
+            int index = argsList.indexOf("diagnostics");
+            String name = index + 1 < args.length ? args[index + 1] : "threads";
+            String argument = index + 2 < args.length ? args[index + 2] : "";
+            System.exit(controlSocket != null ? (SjlControlThread.requestDiagnostics(controlSocket, name, argument) ? 0 : 1)
+                    : (SjlControlThread.requestDiagnostics(port, name, argument) ? 0 : 1));
+        }
+        if(argsList.contains("status")){
+            if(port == 0 && controlSocket == null){
+                throw new Exception("status command is allowed only if controlPort or controlSocket is defined");
             }
-            System.exit(1);
+            // 0 - ready, 1 - not running, 3 - started but not ready, 4 - degraded
+            System.exit(controlSocket != null ? SjlControlThread.getApplicationStatus(controlSocket) : SjlControlThread.getApplicationStatus(port));
         }
         if(argsList.contains("-background")){
-            if(port == 0){
-                throw new Exception("background mode is allowed only if controlPort is defined");
+            if(port == 0 && controlSocket == null){
+                throw new Exception("background mode is allowed only if controlPort or controlSocket is defined");
             }
         }
         File libFolder = new File(config.computeValue("sjl.libFolder", "lib"));
@@ -138,94 +221,239 @@ public class SjlBoot {
         if(!tempDirectory.exists() && !tempDirectory.mkdirs()){
             throw new IllegalArgumentException("unable to create temp directory " + tempDirectory.getAbsolutePath());
         }
+        boolean handoverMode = "handover".equals(config.computeValue("sjl.restartMode", "exit"));
+        if (handoverMode) {
+            SjlHandover.checkSupported();
+        }
+        String handoverToken = SjlHandover.getSuccessorToken();
+        SjlHandover handover = new SjlHandover(tempDirectory, HANDOVER_TIMEOUT.get(config).toMillis());
         File tempFile = new File(tempDirectory, "lock.tmp");
-        FileLock fileLock = acquireLock(tempFile);
-        List<URL> urls = new ArrayList<>();
-        if(libFolder.exists()) {
-            File[] files = libFolder.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && file.getName().endsWith(".jar")) {
-                        urls.add(file.toURI().toURL());
-                    }
-                }
+        FileLock earlyLock = null;
+        if (handoverToken == null) {
+            phase = report.startPhase("acquireLock");
+            earlyLock = acquireLock(tempFile, !handoverMode);
+            phase.close();
+            phase = report.startPhase("restartOperations");
+            new SjlRestartExecutor(tempDirectory).executePending();
+            phase.close();
+        }
+        phase = report.startPhase("libScan");
+        List<SjlBootManifest.JarInfo> jarInfos = bootManifest == null ? null : bootManifest.getJars(libFolder);
+        boolean jarsFromManifest = jarInfos != null;
+        if (jarInfos == null) {
+            jarInfos = scanLibFolder(libFolder);
+        }
+        List<File> jars = toFiles(jarInfos);
+        boolean prefetch = "true".equals(config.computeValue("sjl.prefetchJars", "false"));
+        if (prefetcher != null && (!prefetch || !jarsFromManifest)) {
+            prefetcher.close();
+            prefetcher = null;
+        }
+        if (prefetcher == null && prefetch) {
+            prefetcher = new SjlJarPrefetcher(jars);
+        }
+        if (useBootManifest && bootManifestFile.getParentFile().exists()) {
+            SjlBootManifest updatedManifest = SjlBootManifest.create(configFileDiscovered ? configFileName : null, libFolder, jarInfos, applicationClass, prefetch);
+            if (!updatedManifest.isSame(bootManifest)) {
+                updatedManifest.save(bootManifestFile);
+            }
+        }
+        phase.close();
+        Logger logger = Logger.getLogger(SjlBoot.class.getName());
+        if (!config.getProfiles().isEmpty()) {
+            logger.info(String.format("active configuration profiles: %s", String.join(", ", config.getProfiles())));
+        }
+        phase = report.startPhase("classLoaderCreation");
+        SjlCdsSupport cds = null;
+        if("true".equals(config.computeValue("sjl.cds", "false"))){
+            if(SjlCdsSupport.isSupported()){
+                cds = new SjlCdsSupport(tempDirectory, jars);
+                cds.prepare();
+            } else {
+                logger.warning("CDS mode requires java 13 or newer, option is ignored");
+            }
+        }
+        SjlApplicationClassLoader cl = createClassLoader(config, jars, tempDirectory, prefetcher);
+        if(cds != null && cds.isTraining()){
+            cl.setClassListener(cds.getClassListener());
+        }
+        if(prefetcher != null){
+            // handles the indexed classloader has not taken yet are adopted by it, others are closed in background
+            if (cl instanceof SjlIndexedClassLoader) {
+                prefetcher.close(((SjlIndexedClassLoader) cl)::adoptJarFile);
+            } else {
+                prefetcher.close();
             }
         }
-        ClassLoader cl = new URLClassLoader(urls.toArray(new URL[0]), SjlBoot.class.getClassLoader());
         Thread.currentThread().setContextClassLoader(cl);
+        phase.close();
+        phase = report.startPhase("applicationInstantiation");
         Application app = (Application) cl.loadClass(applicationClass).getConstructor().newInstance();
+        phase.close();
+        if (app instanceof WarmupAware) {
+            phase = report.startPhase("applicationWarmup");
+            ((WarmupAware) app).warmup(config);
+            phase.close();
+        }
+        FileLock fileLock;
+        if (handoverToken == null) {
+            fileLock = earlyLock;
+        } else {
+            // predecessor stops as soon as it sees the ready signal, then lock and control port become free
+            handover.signalReady(handoverToken);
+            phase = report.startPhase("handoverWait");
+            fileLock = awaitLock(tempFile, handover.getTimeout(), !handoverMode);
+            handover.clearReady(handoverToken);
+            // predecessor applied restart operations before starting this process and left them to be committed here
+            new SjlRestartExecutor(tempDirectory).commit();
+            phase.close();
+        }
 
-        Logger logger = Logger.getLogger(SjlBoot.class.getName());
 
         AtomicReference<Boolean> stopped = new AtomicReference<>(false);
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> stopApplication(app, stopped, fileLock, tempFile)));
+        AtomicReference<Application> appRef = new AtomicReference<>(app);
+        AtomicReference<SjlApplicationClassLoader> loaderRef = new AtomicReference<>(cl);
+        boolean reloadMode = "reload".equals(config.computeValue("sjl.restartMode", "exit"));
+        ThreadPoolExecutor reloadExecutor = null;
+        if (reloadMode) {
+            // reload thread is created here, a thread created from application thread would keep its classloader reachable
+            reloadExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "sjl-reload-thread");
+                thread.setDaemon(true);
+                thread.setContextClassLoader(SjlBoot.class.getClassLoader());
+                return thread;
+            });
+            reloadExecutor.prestartCoreThread();
+        }
+        ExecutorService reloadThread = reloadExecutor;
+        // launcher threads that inherited application classloader as context classloader, they are switched on reload
+        List<Thread> launcherThreads = new CopyOnWriteArrayList<>();
+        launcherThreads.add(Thread.currentThread());
+        SjlMetricsRegistry metrics = new SjlMetricsRegistry(report);
+        SjlHealthMonitor healthMonitor = new SjlHealthMonitor(() -> stopped.get() ? null : appRef.get(),
+                HEALTH_INTERVAL.get(config).toMillis(), HEALTH_TIMEOUT.get(config).toMillis());
+        SjlShutdown shutdown = new SjlShutdown(tempDirectory, SHUTDOWN_DRAIN_TIME.get(config).toMillis(),
+                SHUTDOWN_TIMEOUT.get(config).toMillis(), healthMonitor);
+        Thread shutdownHook = new Thread(() -> stopApplication(appRef, shutdown, config, stopped, fileLock, tempFile));
+        launcherThreads.add(shutdownHook);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        phase = report.startPhase("applicationStart");
         try {
             app.start(config, new ApplicationCallback() {
+                @Override
+                public BootPhase startPhase(String name) {
+                    return report.startPhase(name);
+                }
+
+                @Override
+                public Counter counter(String name, String help) {
+                    return metrics.counter(name, help);
+                }
+
+                @Override
+                public void addStopHook(String name, StopHook hook) {
+                    shutdown.addStopHook(name, hook);
+                }
+
                 @Override
                 public void stop() {
-                    stopApplication(app, stopped, fileLock, tempFile);
+                    stopApplication(appRef, shutdown, config, stopped, fileLock, tempFile);
                     System.exit(0);
                 }
 
                 @Override
                 public void restart(List<RestartOperation> operations) {
-                    if (operations.size() > 0) {
+                    if (handoverMode) {
+                        // the journal stays open until the successor takes over, it commits the changes
+                        SjlRestartExecutor executor = new SjlRestartExecutor(tempDirectory);
+                        try {
+                            executor.apply(operations);
+                        } catch (Throwable t) {
+                            logger.severe(SjlUtils.prepareLogMessage("unable to apply restart operations, handover is cancelled, application continues running", t));
+                            return;
+                        }
+                        if (handover.startSuccessor(args)) {
+                            // lock file is kept, successor already waits on it
+                            stopApplication(appRef, shutdown, config, stopped, fileLock, null);
+                            System.exit(0);
+                        }
                         try {
-                            List<Map<String, String>> nodes = new ArrayList<>();
-                            operations.forEach(op -> {
-                                if (op instanceof DeleteOperation) {
-                                    DeleteOperation dop = (DeleteOperation) op;
-                                    Map<String, String> map = new HashMap<>();
-                                    map.put("operation", "delete");
-                                    map.put("file", dop.file.getAbsolutePath());
-                                    nodes.add(map);
-                                }
-                                if (op instanceof MoveOperation) {
-                                    MoveOperation mop = (MoveOperation) op;
-                                    Map<String, String> map = new HashMap<>();
-                                    map.put("operation", "move");
-                                    map.put("from", mop.from.getAbsolutePath());
-                                    map.put("to", mop.to.getAbsolutePath());
-                                    nodes.add(map);
-                                }
-                                if (op instanceof SleepOperation) {
-                                    SleepOperation sop = (SleepOperation) op;
-                                    Map<String, String> map = new HashMap<>();
-                                    map.put("operation", "sleep");
-                                    map.put("duration", String.valueOf(sop.duration));
-                                    nodes.add(map);
-                                }
-                            });
-                            SjlExtStandardRepresenter representer = new SjlExtStandardRepresenter(SjlExtDumpSettings.builder().build());
-                            try (OutputStream os = Files.newOutputStream(new File(tempDirectory, "restart.dat").toPath())) {
-                                SjlExtYamlOutputStreamWriter writer = new SjlExtYamlOutputStreamWriter(os, StandardCharsets.UTF_8) {
-                                    @Override
-                                    public void processIOException(IOException e) {
-                                        throw new RuntimeException(e);
-                                    }
-                                };
-                                new SjlExtDump(SjlExtDumpSettings.builder().build()).dumpNode(representer.represent(nodes), writer);
+                            executor.rollback();
+                        } catch (Throwable t) {
+                            logger.severe(SjlUtils.prepareLogMessage("handover failed and restart operations can not be rolled back, application is stopped", t));
+                            stopApplication(appRef, shutdown, config, stopped, fileLock, tempFile);
+                            System.exit(2);
+                        }
+                        logger.severe("handover failed, restart operations are rolled back, application continues running");
+                        return;
+                    }
+                    if (reloadMode) {
+                        ApplicationCallback callback = this;
+                        // application may wait for its own threads in stop, so reload runs in a launcher thread
+                        reloadThread.execute(() -> {
+                            if (!reloadApplication(appRef, loaderRef, stopped, operations, config, callback, launcherThreads, healthMonitor, shutdown)) {
+                                stopApplication(appRef, shutdown, config, stopped, fileLock, tempFile);
+                                System.exit(2);
                             }
+                        });
+                        return;
+                    }
+                    if (operations.size() > 0) {
+                        try {
+                            new SjlRestartExecutor(tempDirectory).save(operations);
                         } catch (Throwable t) {
                             logger.severe("unable to write restart instructions");
                         }
                     }
-                    stopApplication(app, stopped, fileLock, tempFile);
+                    stopApplication(appRef, shutdown, config, stopped, fileLock, tempFile);
                     System.exit(2);
                 }
             });
         } catch (Exception e) {
-            stopApplication(app, stopped, fileLock, tempFile);
+            stopApplication(appRef, shutdown, config, stopped, fileLock, tempFile);
             throw e;
         }
+        healthMonitor.setStarted(true);
+        phase.close();
+        report.write(new File(tempDirectory, "boot-report.json"));
+        if(cds != null && cds.isTraining()){
+            cl.setClassListener(null);
+            cds.startTraining();
+        }
+        if ("true".equals(config.computeValue("sjl.configWatch", "false"))) {
+            SjlConfigWatcher watcher = new SjlConfigWatcher(config, CONFIG_WATCH_DEBOUNCE.get(config).toMillis());
+            launcherThreads.add(watcher);
+            watcher.start();
+        }
+        int metricsPort = METRICS_PORT.get(config);
+        String metricsHost = config.computeValue("sjl.metricsHost", "localhost");
+        // application and classloader are referenced only by appRef and loaderRef, so they can be discarded on reload
+        app = null;
+        cl = null;
         if(argsList.contains("-background")){
-            new SjlControlThread(port, ()->{
-                stopApplication(app, stopped, fileLock, tempFile);
+            SjlControlThread controlThread = createControlThread(port, controlSocket, ()->{
+                stopApplication(appRef, shutdown, config, stopped, fileLock, tempFile);
                 return null;
-            }).start();
+            }, handoverToken == null ? 0 : handover.getTimeout());
+            controlThread.setMetrics(metrics);
+            controlThread.setHealthMonitor(healthMonitor);
+            controlThread.setDiagnostics(new SjlDiagnostics(new File(tempDirectory, "diagnostics")));
+            controlThread.setConfiguration(config);
+            if (metricsPort != 0) {
+                controlThread.bindMetricsListener(metricsHost, metricsPort);
+            }
+            launcherThreads.add(controlThread);
+            controlThread.start();
             logger.info("application started in background mode");
             return;
         }
+        if (metricsPort != 0) {
+            SjlControlThread metricsThread = new SjlControlThread(metrics);
+            metricsThread.setHealthMonitor(healthMonitor);
+            metricsThread.bindMetricsListener(metricsHost, metricsPort);
+            launcherThreads.add(metricsThread);
+            metricsThread.start();
+        }
         System.out.println("Press 'q' key to exit.");
         int c;
         do {
@@ -235,10 +463,144 @@ public class SjlBoot {
                 break;
             }
         } while ('q' != (char) c && 'Q' != (char) c);
-        stopApplication(app,stopped, fileLock, tempFile);
+        stopApplication(appRef, shutdown, config, stopped, fileLock, tempFile);
+    }
+
+    private static List<SjlBootManifest.JarInfo> scanLibFolder(File libFolder) throws IOException {
+        List<SjlBootManifest.JarInfo> result = new ArrayList<>();
+        File[] files = libFolder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".jar")) {
+                    BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        result.add(SjlBootManifest.JarInfo.of(file, attributes));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static SjlApplicationClassLoader createClassLoader(AppConfiguration config, List<File> jars, File tempDirectory, SjlJarPrefetcher prefetcher) throws IOException {
+        if ("true".equals(config.computeValue("sjl.indexedClassLoader", "false"))) {
+            return new SjlIndexedClassLoader(jars, SjlBoot.class.getClassLoader(), new File(tempDirectory, "classloader.idx"), prefetcher == null ? null : prefetcher::take);
+        }
+        List<URL> urls = new ArrayList<>();
+        for (File jar : jars) {
+            urls.add(jar.toURI().toURL());
+        }
+        return new SjlApplicationClassLoader(urls.toArray(new URL[0]), SjlBoot.class.getClassLoader());
+    }
+
+    /*
+     * stops application, discards its classloader, applies restart operations and starts application in a new classloader,
+     * returns false if application could not be started again
+     */
+    private static boolean reloadApplication(AtomicReference<Application> appRef, AtomicReference<SjlApplicationClassLoader> loaderRef,
+                                             AtomicReference<Boolean> stopped, List<RestartOperation> operations, AppConfiguration config,
+                                             ApplicationCallback callback, List<Thread> launcherThreads, SjlHealthMonitor healthMonitor,
+                                             SjlShutdown shutdown) {
+        Logger logger = Logger.getLogger(SjlBoot.class.getName());
+        synchronized (lock) {
+            if (stopped.get()) {
+                return true;
+            }
+            long start = System.nanoTime();
+            logger.info("reloading application");
+            if (!shutdown.execute(appRef.get())) {
+                logger.warning("application is not stopped in time, reloading anyway");
+            }
+            healthMonitor.setStarted(false);
+            // listeners of the previous generation would keep its classloader
+            config.clearChangeListeners();
+            appRef.set(null);
+            SjlApplicationClassLoader oldLoader = loaderRef.getAndSet(null);
+            try {
+                oldLoader.close();
+            } catch (IOException e) {
+                logger.warning(SjlUtils.prepareLogMessage("unable to close application classloader", e));
+            }
+            int generation = reloadCount.incrementAndGet();
+            try {
+                File tempDirectory = new File(config.computeValue("sjl.tempDirectory", "temp"));
+                new SjlRestartExecutor(tempDirectory).execute(operations);
+                List<File> jars = toFiles(scanLibFolder(new File(config.computeValue("sjl.libFolder", "lib"))));
+                SjlApplicationClassLoader cl = createClassLoader(config, jars, tempDirectory, null);
+                loaderRef.set(cl);
+                for (Thread thread : launcherThreads) {
+                    if (thread.getContextClassLoader() == oldLoader) {
+                        thread.setContextClassLoader(cl);
+                    }
+                }
+                SjlClassLoaderLeakDetector.watch(oldLoader, "application classloader of generation " + (generation - 1));
+                oldLoader = null;
+                Thread.currentThread().setContextClassLoader(cl);
+                Application app = (Application) cl.loadClass(config.computeValue("sjl.applicationClass", null)).getConstructor().newInstance();
+                if (app instanceof WarmupAware) {
+                    ((WarmupAware) app).warmup(config);
+                }
+                appRef.set(app);
+                app.start(config, callback);
+                healthMonitor.setStarted(true);
+            } catch (Throwable e) {
+                logger.severe(SjlUtils.prepareLogMessage("unable to reload application", e));
+                return false;
+            }
+            logger.info(String.format("application is reloaded in %s ms", (System.nanoTime() - start) / 1000000));
+            return true;
+        }
+    }
+
+    private static List<File> toFiles(List<SjlBootManifest.JarInfo> jarInfos) {
+        List<File> result = new ArrayList<>();
+        for (SjlBootManifest.JarInfo jarInfo : jarInfos) {
+            result.add(jarInfo.file);
+        }
+        return result;
     }
 
-    private static FileLock acquireLock(File tempFile) throws Exception {
+    private static String getBootstrapValue(String propertyName, String defaultValue) {
+        String result = System.getProperty(propertyName);
+        if (result == null) {
+            result = System.getenv(propertyName);
+        }
+        return result == null ? defaultValue : result;
+    }
+
+    private static SjlControlThread createControlThread(int port, File controlSocket, Callable<Void> stopCallback, long timeout) throws Exception {
+        if (controlSocket != null) {
+            // the lock is already acquired so the socket file of the predecessor can be replaced
+            return new SjlControlThread(controlSocket, stopCallback);
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            try {
+                return new SjlControlThread(port, stopCallback);
+            } catch (BindException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                SjlHandover.pause();
+            }
+        }
+    }
+
+    private static FileLock awaitLock(File tempFile, long timeout, boolean deleteOnExit) throws Exception {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            try {
+                return acquireLock(tempFile, deleteOnExit);
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                SjlHandover.pause();
+            }
+        }
+    }
+
+    private static FileLock acquireLock(File tempFile, boolean deleteOnExit) throws Exception {
         File tempDir = tempFile.getParentFile();
         if (!tempDir.exists() && !tempDir.mkdirs()) {
             throw new Exception("unable to create dir " + tempDir.getAbsolutePath());
@@ -253,7 +615,9 @@ public class SjlBoot {
             if(result == null){
                 channel.close();
             }
-            tempFile.deleteOnExit();
+            if (deleteOnExit) {
+                tempFile.deleteOnExit();
+            }
         } catch (Exception e) {
             throw new Exception(
                     "Another instance of the application is running. Please terminate and try again.", e);
@@ -265,22 +629,31 @@ public class SjlBoot {
         return result;
     }
 
-    private static void stopApplication(Application app, AtomicReference<Boolean> stopped, FileLock fileLock, File tempFile) {
+    private static void stopApplication(AtomicReference<Application> appRef, SjlShutdown shutdown, AppConfiguration config, AtomicReference<Boolean> stopped,
+                                        FileLock fileLock, File tempFile) {
         Logger logger = Logger.getLogger(SjlBoot.class.getName());
         synchronized (lock) {
             if (!stopped.get()) {
                 logger.info("stopping application");
                 stopped.set(true);
                 try {
-                    app.stop();
-                    logger.info("application is stopped");
+                    // the lock is held at most for the shutdown timeout, a hung stop is abandoned
+                    if (shutdown.execute(appRef.get())) {
+                        logger.info("application is stopped");
+                    }
                 } catch (Throwable e) {
                     logger.warning(SjlUtils.prepareLogMessage("unable to stop application", e));
                 } finally {
+                    try {
+                        // changes saved automatically by the application must not be lost with the daemon save thread
+                        config.flush();
+                    } catch (Throwable e) {
+                        logger.severe(SjlUtils.prepareLogMessage("unable to save configuration", e));
+                    }
                     try {
                         fileLock.release();
                         fileLock.channel().close();
-                        if (tempFile.exists() && !tempFile.delete()) {
+                        if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
                             throw new Exception("unable to delete temp file " + tempFile);
                         }
                     } catch (Exception e) {
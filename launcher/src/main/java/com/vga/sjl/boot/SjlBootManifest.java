@@ -0,0 +1,194 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.boot;
+
+import com.vga.sjl.utils.SjlUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/*
+ * Persisted result of config discovery and lib folder scan.
+ * Discovered config is trusted while modification times of the working directory and its config subdirectory are unchanged,
+ * jar list is trusted while modification time of the lib folder is unchanged, so a warm start needs a few stat calls
+ * instead of probing every config candidate and every file of the lib folder.
+ * Jars replaced in place (without creating a new directory entry) are not detected.
+ * Manifest is kept in the temp directory given by sjl.tempDirectory system property or environment variable, "temp" by default.
+ */
+public class SjlBootManifest {
+
+    private static final int VERSION = 2;
+
+    private static final File CONFIG_DIRECTORY = new File("config");
+
+    private static final File WORKING_DIRECTORY = new File(".");
+
+    private String configFileName;
+
+    private long workingDirectoryModified;
+
+    private long configDirectoryModified;
+
+    private String libFolder;
+
+    private long libFolderModified;
+
+    private String applicationClass;
+
+    private boolean prefetchJars;
+
+    private final List<JarInfo> jars = new ArrayList<>();
+
+    public static SjlBootManifest load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (dis.readInt() != VERSION) {
+                return null;
+            }
+            SjlBootManifest result = new SjlBootManifest();
+            result.configFileName = dis.readUTF();
+            result.workingDirectoryModified = dis.readLong();
+            result.configDirectoryModified = dis.readLong();
+            result.libFolder = dis.readUTF();
+            result.libFolderModified = dis.readLong();
+            result.applicationClass = dis.readUTF();
+            result.prefetchJars = dis.readBoolean();
+            int jarsCount = dis.readInt();
+            for (int n = 0; n < jarsCount; n++) {
+                result.jars.add(new JarInfo(new File(dis.readUTF()), dis.readLong(), dis.readLong()));
+            }
+            return result;
+        } catch (IOException e) {
+            Logger.getLogger(SjlBootManifest.class.getName()).warning(SjlUtils.prepareLogMessage("unable to read boot manifest " + file, e));
+            return null;
+        }
+    }
+
+    /*
+     * configFileName is null if config file was given explicitly instead of being discovered
+     */
+    public static SjlBootManifest create(String configFileName, File libFolder, List<JarInfo> jars, String applicationClass, boolean prefetchJars) {
+        SjlBootManifest result = new SjlBootManifest();
+        result.configFileName = configFileName == null ? "" : configFileName;
+        result.workingDirectoryModified = WORKING_DIRECTORY.lastModified();
+        result.configDirectoryModified = CONFIG_DIRECTORY.lastModified();
+        result.libFolder = libFolder.getAbsolutePath();
+        result.libFolderModified = libFolder.lastModified();
+        result.applicationClass = applicationClass;
+        result.prefetchJars = prefetchJars;
+        result.jars.addAll(jars);
+        return result;
+    }
+
+    /*
+     * returns discovered config file name if none of the config candidates could appear or disappear since the manifest was written
+     */
+    public String getDiscoveredConfigFileName() {
+        if (configFileName.isEmpty() || WORKING_DIRECTORY.lastModified() != workingDirectoryModified || CONFIG_DIRECTORY.lastModified() != configDirectoryModified) {
+            return null;
+        }
+        return configFileName;
+    }
+
+    /*
+     * returns jars of the lib folder if the folder content has not changed since the manifest was written
+     */
+    public List<JarInfo> getJars(File libFolder) {
+        if (!libFolder.getAbsolutePath().equals(this.libFolder) || libFolder.lastModified() != libFolderModified) {
+            return null;
+        }
+        return Collections.unmodifiableList(jars);
+    }
+
+    /*
+     * returns jars of the recorded lib folder, so they can be prefetched before the config is parsed
+     */
+    public List<JarInfo> getPrefetchJars() {
+        return prefetchJars ? getJars(new File(libFolder)) : null;
+    }
+
+    public boolean isSame(SjlBootManifest other) {
+        if (other == null || !configFileName.equals(other.configFileName) || workingDirectoryModified != other.workingDirectoryModified
+                || configDirectoryModified != other.configDirectoryModified || !libFolder.equals(other.libFolder)
+                || libFolderModified != other.libFolderModified || !applicationClass.equals(other.applicationClass) || prefetchJars != other.prefetchJars
+                || jars.size() != other.jars.size()) {
+            return false;
+        }
+        for (int n = 0; n < jars.size(); n++) {
+            JarInfo jar = jars.get(n);
+            JarInfo otherJar = other.jars.get(n);
+            if (!jar.file.equals(otherJar.file) || jar.size != otherJar.size || jar.lastModified != otherJar.lastModified) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void save(File file) {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                dos.writeInt(VERSION);
+                dos.writeUTF(configFileName);
+                dos.writeLong(workingDirectoryModified);
+                dos.writeLong(configDirectoryModified);
+                dos.writeUTF(libFolder);
+                dos.writeLong(libFolderModified);
+                dos.writeUTF(applicationClass);
+                dos.writeBoolean(prefetchJars);
+                dos.writeInt(jars.size());
+                for (JarInfo jar : jars) {
+                    dos.writeUTF(jar.file.getPath());
+                    dos.writeLong(jar.size);
+                    dos.writeLong(jar.lastModified);
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Logger.getLogger(SjlBootManifest.class.getName()).warning(SjlUtils.prepareLogMessage("unable to write boot manifest " + file, e));
+        }
+    }
+
+    public static class JarInfo {
+        public final File file;
+        public final long size;
+        public final long lastModified;
+
+        public JarInfo(File file, long size, long lastModified) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public static JarInfo of(File file, BasicFileAttributes attributes) {
+            return new JarInfo(file, attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+    }
+}
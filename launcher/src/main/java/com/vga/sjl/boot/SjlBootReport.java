@@ -0,0 +1,221 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.boot;
+
+import com.vga.sjl.BootPhase;
+import com.vga.sjl.utils.SjlUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/*
+ * collects nanosecond timings and allocations of the boot phases and writes them as json
+ * allocations are measured for the thread that opened the phase
+ */
+public class SjlBootReport {
+
+    private final long startNanos = System.nanoTime();
+
+    private final long startTime = System.currentTimeMillis();
+
+    private final long jvmUptime = ManagementFactory.getRuntimeMXBean().getUptime();
+
+    private final List<Phase> phases = new ArrayList<>();
+
+    private final ThreadLocal<Phase> currentPhase = new ThreadLocal<>();
+
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    public SjlBootReport() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            allocationBean = (com.sun.management.ThreadMXBean) bean;
+            if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+                allocationBean = null;
+            }
+        }
+        threadBean = allocationBean;
+    }
+
+    public BootPhase startPhase(String name) {
+        Phase parent = currentPhase.get();
+        Phase phase = new Phase(name, parent, System.nanoTime() - startNanos, currentAllocatedBytes());
+        synchronized (this) {
+            if (parent != null) {
+                parent.children.add(phase);
+            } else {
+                phases.add(phase);
+            }
+        }
+        currentPhase.set(phase);
+        return phase;
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return Collections.unmodifiableList(new ArrayList<>(phases));
+    }
+
+    private long currentAllocatedBytes() {
+        return threadBean == null ? -1 : threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public void write(File file) {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            try (Writer writer = new OutputStreamWriter(Files.newOutputStream(tempFile.toPath()), StandardCharsets.UTF_8)) {
+                StringBuilder sb = new StringBuilder();
+                sb.append("{\n");
+                sb.append("  \"startTime\": \"").append(Instant.ofEpochMilli(startTime)).append("\",\n");
+                sb.append("  \"jvmUptimeAtStartMillis\": ").append(jvmUptime).append(",\n");
+                sb.append("  \"totalNanos\": ").append(System.nanoTime() - startNanos).append(",\n");
+                sb.append("  \"allocationsMeasured\": ").append(threadBean != null).append(",\n");
+                sb.append("  \"phases\": ");
+                synchronized (this) {
+                    appendPhases(sb, phases, "  ");
+                }
+                sb.append("\n}\n");
+                writer.write(sb.toString());
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Logger.getLogger(SjlBootReport.class.getName()).warning(SjlUtils.prepareLogMessage("unable to write boot report " + file, e));
+        }
+    }
+
+    private static void appendPhases(StringBuilder sb, List<Phase> phases, String indent) {
+        if (phases.isEmpty()) {
+            sb.append("[]");
+            return;
+        }
+        sb.append("[\n");
+        for (int n = 0; n < phases.size(); n++) {
+            Phase phase = phases.get(n);
+            String nestedIndent = indent + "  ";
+            sb.append(nestedIndent).append("{\n");
+            sb.append(nestedIndent).append("  \"name\": \"");
+            appendEscaped(sb, phase.name);
+            sb.append("\",\n");
+            sb.append(nestedIndent).append("  \"startNanos\": ").append(phase.startNanos).append(",\n");
+            sb.append(nestedIndent).append("  \"durationNanos\": ").append(phase.getDurationNanos()).append(",\n");
+            sb.append(nestedIndent).append("  \"allocatedBytes\": ").append(phase.getAllocatedBytes()).append(",\n");
+            sb.append(nestedIndent).append("  \"phases\": ");
+            appendPhases(sb, phase.children, nestedIndent + "  ");
+            sb.append("\n").append(nestedIndent).append("}");
+            if (n < phases.size() - 1) {
+                sb.append(",");
+            }
+            sb.append("\n");
+        }
+        sb.append(indent).append("]");
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int n = 0; n < value.length(); n++) {
+            char c = value.charAt(n);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    public class Phase implements BootPhase {
+        private final String name;
+        private final Phase parent;
+        private final long startNanos;
+        private final long startAllocatedBytes;
+        private final List<Phase> children = new ArrayList<>();
+        private volatile long durationNanos = -1;
+        private volatile long allocatedBytes = -1;
+
+        Phase(String name, Phase parent, long startNanos, long startAllocatedBytes) {
+            this.name = name;
+            this.parent = parent;
+            this.startNanos = startNanos;
+            this.startAllocatedBytes = startAllocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /*
+         * -1 if phase is not closed yet
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /*
+         * -1 if allocations are not measured
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public List<Phase> getChildren() {
+            synchronized (SjlBootReport.this) {
+                return Collections.unmodifiableList(new ArrayList<>(children));
+            }
+        }
+
+        @Override
+        public void close() {
+            if (durationNanos >= 0) {
+                return;
+            }
+            durationNanos = System.nanoTime() - SjlBootReport.this.startNanos - startNanos;
+            if (startAllocatedBytes >= 0) {
+                long allocated = currentAllocatedBytes();
+                allocatedBytes = allocated >= 0 ? allocated - startAllocatedBytes : -1;
+            }
+            if (currentPhase.get() == this) {
+                if (parent != null) {
+                    currentPhase.set(parent);
+                } else {
+                    currentPhase.remove();
+                }
+            }
+        }
+
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.boot;
+
+import com.vga.sjl.SjlBoot;
+import com.vga.sjl.utils.SjlUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/*
+ * Handover restart: the running instance spawns its successor with the same jvm arguments,
+ * the successor prepares and warms up the application and signals readiness with a file in temp directory,
+ * then the running instance stops and the successor takes over the lock file and the control port.
+ * The successor outlives the process that started it, so the main pid changes on every handover: the instance
+ * must run under a process manager that follows it (e.g. systemd with a pid file or a supervisor that does not
+ * stop on exit of its child), it can not be pid 1 of a container. Arguments that bind ports or write fixed files,
+ * like debugger, remote JMX and file logging options, are not passed to the successor; java agents are passed
+ * as is and must not bind ports themselves.
+ */
+public class SjlHandover {
+
+    public static final String HANDOVER_PROPERTY = "sjl.handover";
+
+    private static final long POLL_INTERVAL = 20;
+
+    private static final String[] PORT_PROPERTIES = {"-Dcom.sun.management.jmxremote.port=",
+            "-Dcom.sun.management.jmxremote.rmi.port=", "-Dcom.sun.management.jmxremote.local.port="};
+
+    private final File tempDirectory;
+
+    private final long timeout;
+
+    public SjlHandover(File tempDirectory, long timeout) {
+        this.tempDirectory = tempDirectory;
+        this.timeout = timeout;
+    }
+
+    /*
+     * returns handover token if current process is a successor
+     */
+    public static String getSuccessorToken() {
+        return System.getProperty(HANDOVER_PROPERTY);
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /*
+     * exit of pid 1 stops the container together with the successor
+     */
+    public static void checkSupported() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        if (name.startsWith("1@")) {
+            throw new IllegalArgumentException("handover restart mode requires a process manager that follows the main pid, "
+                    + "it can not be used when the launcher runs as pid 1");
+        }
+    }
+
+    /*
+     * starts successor and waits until it is ready, returns false if successor died or did not get ready in time
+     */
+    public boolean startSuccessor(String[] args) {
+        Logger logger = Logger.getLogger(SjlHandover.class.getName());
+        String token = UUID.randomUUID().toString();
+        File readyFile = getReadyFile(token);
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getAbsolutePath());
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (arg.startsWith("-D" + HANDOVER_PROPERTY + "=")) {
+                continue;
+            }
+            if (isBindingArgument(arg)) {
+                // both instances run side by side until the handover, the successor would fail to bind or overwrite the file
+                logger.info("jvm argument " + arg + " is not passed to successor");
+                continue;
+            }
+            command.add(arg);
+        }
+        command.add("-D" + HANDOVER_PROPERTY + "=" + token);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SjlBoot.class.getName());
+        command.addAll(Arrays.asList(args));
+        Process process;
+        try {
+            process = new ProcessBuilder(command).inheritIO().start();
+        } catch (IOException e) {
+            logger.severe(SjlUtils.prepareLogMessage("unable to start successor process", e));
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while (!readyFile.exists()) {
+                if (!process.isAlive()) {
+                    logger.severe("successor process exited with code " + process.exitValue() + ", handover is cancelled");
+                    return false;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    logger.severe("successor process is not ready in " + timeout + " ms, handover is cancelled");
+                    process.destroyForcibly();
+                    return false;
+                }
+                Thread.sleep(POLL_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+            return false;
+        }
+        logger.info("successor process is ready, handing over");
+        return true;
+    }
+
+    private static boolean isBindingArgument(String arg) {
+        if (arg.startsWith("-agentlib:jdwp") || arg.startsWith("-Xrunjdwp")) {
+            return arg.contains("address=") || arg.contains("server=y");
+        }
+        if (arg.startsWith("-Xlog:")) {
+            // -Xlog:what:output:decorators, output is a file unless it is empty, stdout or stderr
+            String[] parts = arg.substring("-Xlog:".length()).split(":", 3);
+            return parts.length > 1 && !parts[1].isEmpty() && !"stdout".equals(parts[1]) && !"stderr".equals(parts[1]);
+        }
+        if (arg.startsWith("-Xloggc:")) {
+            return true;
+        }
+        for (String property : PORT_PROPERTIES) {
+            if (arg.startsWith(property)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * called by successor when the application is warmed up
+     */
+    public void signalReady(String token) throws IOException {
+        File readyFile = getReadyFile(token);
+        File tmpFile = new File(tempDirectory, readyFile.getName() + ".tmp");
+        Files.write(tmpFile.toPath(), token.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmpFile.toPath(), readyFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        readyFile.deleteOnExit();
+    }
+
+    public void clearReady(String token) {
+        File readyFile = getReadyFile(token);
+        if (readyFile.exists() && !readyFile.delete()) {
+            Logger.getLogger(SjlHandover.class.getName()).warning("unable to delete " + readyFile.getAbsolutePath());
+        }
+    }
+
+    public static void pause() throws InterruptedException {
+        Thread.sleep(POLL_INTERVAL);
+    }
+
+    private File getReadyFile(String token) {
+        return new File(tempDirectory, "handover-" + token + ".ready");
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.boot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.jar.JarFile;
+
+/*
+ * Opens jars in parallel in background: every jar is read once to bring its pages into the page cache,
+ * then opened as JarFile which parses the central directory.
+ * Opened handles are handed over to the classloader with take() or close(consumer), handles that are not taken
+ * are closed in background on close(), the caller never waits for jars that are still being opened.
+ */
+public class SjlJarPrefetcher implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ForkJoinPool pool;
+
+    private final Map<File, ForkJoinTask<JarFile>> tasks = new LinkedHashMap<>();
+
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    public SjlJarPrefetcher(List<File> jars) {
+        pool = new ForkJoinPool(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+        for (File jar : jars) {
+            tasks.put(jar.getAbsoluteFile(), pool.submit(() -> prefetch(jar)));
+        }
+    }
+
+    private JarFile prefetch(File jar) {
+        try {
+            try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = buffers.get();
+                buffer.clear();
+                while (channel.read(buffer) > 0) {
+                    buffer.clear();
+                }
+            }
+            return new JarFile(jar);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /*
+     * returns prefetched jar or null if jar was not prefetched or could not be opened
+     */
+    public JarFile take(File jar) {
+        ForkJoinTask<JarFile> task;
+        synchronized (this) {
+            task = tasks.remove(jar.getAbsoluteFile());
+        }
+        if (task == null) {
+            return null;
+        }
+        try {
+            return task.join();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        close((jar, jarFile) -> {
+            try {
+                jarFile.close();
+            } catch (IOException e) {
+                //noops
+            }
+        });
+    }
+
+    /*
+     * handles that are not taken are passed to the consumer in background as soon as they are opened
+     */
+    public synchronized void close(BiConsumer<File, JarFile> consumer) {
+        Map<File, ForkJoinTask<JarFile>> remaining = new LinkedHashMap<>(tasks);
+        tasks.clear();
+        pool.execute(() -> {
+            for (Map.Entry<File, ForkJoinTask<JarFile>> entry : remaining.entrySet()) {
+                try {
+                    JarFile jarFile = entry.getValue().join();
+                    if (jarFile != null) {
+                        consumer.accept(entry.getKey(), jarFile);
+                    }
+                } catch (Exception e) {
+                    //noops
+                }
+            }
+        });
+        pool.shutdown();
+    }
+}
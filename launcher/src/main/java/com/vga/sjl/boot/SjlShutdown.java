@@ -0,0 +1,200 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.boot;
+
+import com.vga.sjl.Application;
+import com.vga.sjl.BootPhase;
+import com.vga.sjl.StopHook;
+import com.vga.sjl.diagnostics.SjlDiagnostics;
+import com.vga.sjl.health.SjlHealthMonitor;
+import com.vga.sjl.utils.SjlUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/*
+ * Stops application in phases: drain, when readiness is already false but application still serves in-flight work,
+ * then stop hooks in parallel, then Application.stop. All phases share one deadline, when it expires
+ * a thread dump is written and the remaining work is abandoned in daemon threads.
+ * Phase timings are written to shutdown-report.json in the temp directory.
+ */
+public final class SjlShutdown {
+
+    // time left after the deadline for the thread dump, the report and releasing launcher resources
+    private static final long STOP_RESPONSE_MARGIN = 10000;
+
+    private final File tempDirectory;
+
+    private final long drainTime;
+
+    private final long timeout;
+
+    private final SjlHealthMonitor healthMonitor;
+
+    private final List<Hook> hooks = new CopyOnWriteArrayList<>();
+
+    /*
+     * how long a control client waits for the response to STOP, which is sent when the application is stopped
+     */
+    public static long getStopResponseTimeout(long timeout) {
+        return timeout + STOP_RESPONSE_MARGIN;
+    }
+
+    public SjlShutdown(File tempDirectory, long drainTime, long timeout, SjlHealthMonitor healthMonitor) {
+        this.tempDirectory = tempDirectory;
+        this.drainTime = drainTime;
+        this.timeout = timeout;
+        this.healthMonitor = healthMonitor;
+    }
+
+    public void addStopHook(String name, StopHook hook) {
+        hooks.add(new Hook(name, hook));
+    }
+
+    /*
+     * returns false if shutdown did not complete in time, registered hooks are discarded in any case
+     */
+    public boolean execute(Application app) {
+        Logger logger = Logger.getLogger(SjlShutdown.class.getName());
+        SjlBootReport report = new SjlBootReport();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        List<Hook> currentHooks = new ArrayList<>(hooks);
+        hooks.clear();
+        boolean completed = false;
+        long drainNanos = 0;
+        long hooksNanos = 0;
+        long applicationNanos = 0;
+        try {
+            BootPhase phase = report.startPhase("drain");
+            try {
+                if (healthMonitor != null) {
+                    healthMonitor.setStopping();
+                }
+                long drainEnd = Math.min(deadline, start + TimeUnit.MILLISECONDS.toNanos(drainTime));
+                long remaining;
+                while ((remaining = drainEnd - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+            } finally {
+                phase.close();
+            }
+            long phaseStart = System.nanoTime();
+            drainNanos = phaseStart - start;
+            boolean hooksCompleted;
+            phase = report.startPhase("stopHooks");
+            try {
+                hooksCompleted = runHooks(currentHooks, report, deadline);
+            } finally {
+                phase.close();
+            }
+            hooksNanos = System.nanoTime() - phaseStart;
+            phaseStart = System.nanoTime();
+            if (hooksCompleted && app != null) {
+                phase = report.startPhase("applicationStop");
+                try {
+                    completed = runInThread(app::stop, "sjl-stop-thread", app.getClass().getClassLoader(), deadline);
+                } finally {
+                    phase.close();
+                }
+            } else {
+                completed = hooksCompleted;
+            }
+            applicationNanos = System.nanoTime() - phaseStart;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!completed) {
+            BootPhase phase = report.startPhase("threadDump");
+            try {
+                File dump = new SjlDiagnostics(new File(tempDirectory, "diagnostics")).dumpThreads();
+                logger.severe(String.format("application is not stopped in %s ms, thread dump is written to %s", timeout, dump));
+            } catch (Throwable t) {
+                logger.severe(SjlUtils.prepareLogMessage(String.format("application is not stopped in %s ms, unable to write thread dump", timeout), t));
+            } finally {
+                phase.close();
+            }
+        }
+        report.write(new File(tempDirectory, "shutdown-report.json"));
+        logger.info(String.format("shutdown took %s ms: drain %s ms, %s stop hooks %s ms, application stop %s ms",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), TimeUnit.NANOSECONDS.toMillis(drainNanos), currentHooks.size(),
+                TimeUnit.NANOSECONDS.toMillis(hooksNanos), TimeUnit.NANOSECONDS.toMillis(applicationNanos)));
+        return completed;
+    }
+
+    private static boolean runHooks(List<Hook> hooks, SjlBootReport report, long deadline) throws InterruptedException {
+        if (hooks.isEmpty()) {
+            return true;
+        }
+        CountDownLatch latch = new CountDownLatch(hooks.size());
+        for (Hook hook : hooks) {
+            Thread thread = new Thread(() -> {
+                BootPhase phase = report.startPhase("stopHook " + hook.name);
+                try {
+                    hook.hook.stop();
+                } catch (Throwable t) {
+                    Logger.getLogger(SjlShutdown.class.getName()).warning(SjlUtils.prepareLogMessage("stop hook " + hook.name + " failed", t));
+                } finally {
+                    phase.close();
+                    latch.countDown();
+                }
+            }, "sjl-stop-hook-" + hook.name);
+            thread.setDaemon(true);
+            thread.setContextClassLoader(hook.hook.getClass().getClassLoader());
+            thread.start();
+        }
+        return latch.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private static boolean runInThread(StopHook task, String name, ClassLoader contextClassLoader, long deadline) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                task.stop();
+            } catch (Throwable t) {
+                Logger.getLogger(SjlShutdown.class.getName()).warning(SjlUtils.prepareLogMessage("unable to stop application", t));
+            } finally {
+                latch.countDown();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.setContextClassLoader(contextClassLoader);
+        thread.start();
+        return latch.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private static final class Hook {
+        final String name;
+
+        final StopHook hook;
+
+        Hook(String name, StopHook hook) {
+            this.name = name;
+            this.hook = hook;
+        }
+    }
+}
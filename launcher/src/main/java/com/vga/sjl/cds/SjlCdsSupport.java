@@ -0,0 +1,275 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.cds;
+
+import com.vga.sjl.utils.SjlUtils;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+
+/*
+ * Self-training AppCDS support.
+ * On the first boot (or when the set of jars changes) the classes defined by the application classloader are recorded,
+ * then a separate JVM started with -XX:ArchiveClassesAtExit loads the same classes and dumps a dynamic archive.
+ * The archive is exposed through the cds/jvm.options argument file in the temp directory. The start script can not resolve
+ * the configured temp directory, so a copy is kept as sjl-cds.options in the working directory and the script passes it.
+ * Dynamic archives require Java 13 or newer, on older runtimes the mode is ignored.
+ */
+public class SjlCdsSupport {
+
+    static final String LAUNCHER_CLASS_PREFIX = "L ";
+
+    static final String APPLICATION_CLASS_PREFIX = "A ";
+
+    static final String JAR_PREFIX = "J ";
+
+    // has to be in sync with the start script written by the dist plugin
+    public static final String SCRIPT_OPTIONS_FILE = "sjl-cds.options";
+
+    private final File directory;
+
+    private final File archiveFile;
+
+    private final File classListFile;
+
+    private final File fingerprintFile;
+
+    private final File optionsFile;
+
+    private final File scriptOptionsFile;
+
+    private final List<File> jars;
+
+    private final String fingerprint;
+
+    private final Set<String> applicationClasses = ConcurrentHashMap.newKeySet();
+
+    private boolean training;
+
+    public SjlCdsSupport(File tempDirectory, List<File> jars) {
+        this.directory = new File(tempDirectory, "cds");
+        this.archiveFile = new File(directory, "app.jsa");
+        this.classListFile = new File(directory, "classes.lst");
+        this.fingerprintFile = new File(directory, "fingerprint.dat");
+        this.optionsFile = new File(directory, "jvm.options");
+        this.scriptOptionsFile = new File(SCRIPT_OPTIONS_FILE);
+        this.jars = jars;
+        this.fingerprint = computeFingerprint(jars);
+    }
+
+    public static boolean isSupported() {
+        String version = System.getProperty("java.specification.version");
+        if (version == null || version.startsWith("1.")) {
+            return false;
+        }
+        try {
+            return Integer.parseInt(version) >= 13;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /*
+     * validates existing archive, returns true if a new archive has to be trained during this boot
+     */
+    public boolean prepare() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("unable to create directory " + directory.getAbsolutePath());
+        }
+        if (isArchiveValid()) {
+            writeOptions();
+            if (!isArchiveInUse()) {
+                getLogger().info(String.format("CDS archive %s is ready, pass @%s to the JVM to use it", archiveFile.getAbsolutePath(), optionsFile.getAbsolutePath()));
+            }
+            training = false;
+            return false;
+        }
+        for (File file : new File[]{optionsFile, scriptOptionsFile}) {
+            if (file.exists() && !file.delete()) {
+                getLogger().warning("unable to delete " + file.getAbsolutePath());
+            }
+        }
+        if (fingerprintFile.exists() && !fingerprintFile.delete()) {
+            getLogger().warning("unable to delete " + fingerprintFile.getAbsolutePath());
+        }
+        training = true;
+        return true;
+    }
+
+    public boolean isTraining() {
+        return training;
+    }
+
+    public Consumer<String> getClassListener() {
+        return applicationClasses::add;
+    }
+
+    /*
+     * writes the recorded class list and dumps the archive in a separate JVM, does not block the caller
+     */
+    public void startTraining() {
+        if (!training) {
+            return;
+        }
+        training = false;
+        try {
+            writeClassList();
+        } catch (IOException e) {
+            getLogger().warning(SjlUtils.prepareLogMessage("unable to write CDS class list", e));
+            return;
+        }
+        Thread thread = new Thread(this::dumpArchive, "sjl-cds-training-thread");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private void dumpArchive() {
+        File tempArchive = new File(directory, "app.jsa.tmp");
+        try {
+            if (tempArchive.exists() && !tempArchive.delete()) {
+                throw new IOException("unable to delete " + tempArchive.getAbsolutePath());
+            }
+            List<String> command = new ArrayList<>();
+            command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+            command.add("-XX:ArchiveClassesAtExit=" + tempArchive.getAbsolutePath());
+            command.add("-Xshare:auto");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(SjlCdsTrainer.class.getName());
+            command.add(classListFile.getAbsolutePath());
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(new File(directory, "training.log"))
+                    .start();
+            int exitCode = process.waitFor();
+            if (exitCode != 0 || !tempArchive.exists()) {
+                throw new IOException("CDS training process finished with exit code " + exitCode);
+            }
+            Files.move(tempArchive.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.write(fingerprintFile.toPath(), fingerprint.getBytes(StandardCharsets.UTF_8));
+            writeOptions();
+            getLogger().info(String.format("CDS archive %s is created", archiveFile.getAbsolutePath()));
+        } catch (Exception e) {
+            getLogger().warning(SjlUtils.prepareLogMessage("unable to create CDS archive, see " + new File(directory, "training.log").getAbsolutePath(), e));
+        }
+    }
+
+    private void writeClassList() throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(classListFile), StandardCharsets.UTF_8)) {
+            for (File jar : jars) {
+                writer.write(JAR_PREFIX + jar.getAbsolutePath() + "\n");
+            }
+            for (String className : getLauncherClasses()) {
+                writer.write(LAUNCHER_CLASS_PREFIX + className + "\n");
+            }
+            for (String className : new TreeSet<>(applicationClasses)) {
+                writer.write(APPLICATION_CLASS_PREFIX + className + "\n");
+            }
+        }
+    }
+
+    private static List<String> getLauncherClasses() {
+        List<String> result = new ArrayList<>();
+        try {
+            File launcherJar = new File(SjlCdsSupport.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (!launcherJar.isFile()) {
+                return result;
+            }
+            try (JarFile jarFile = new JarFile(launcherJar)) {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (name.endsWith(".class") && !name.endsWith("module-info.class")) {
+                        result.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            getLogger().warning(SjlUtils.prepareLogMessage("unable to list launcher classes", e));
+        }
+        return result;
+    }
+
+    private boolean isArchiveValid() throws IOException {
+        return archiveFile.exists() && fingerprintFile.exists()
+                && fingerprint.equals(new String(Files.readAllBytes(fingerprintFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    private boolean isArchiveInUse() {
+        String option = "-XX:SharedArchiveFile=";
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith(option) && new File(argument.substring(option.length())).getAbsoluteFile().equals(archiveFile.getAbsoluteFile())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeOptions() throws IOException {
+        String options = String.format("-XX:SharedArchiveFile=%s%n-Xshare:auto%n", archiveFile.getAbsolutePath());
+        byte[] content = options.getBytes(StandardCharsets.UTF_8);
+        Files.write(optionsFile.toPath(), content);
+        try {
+            if (!scriptOptionsFile.exists() || !Arrays.equals(content, Files.readAllBytes(scriptOptionsFile.toPath()))) {
+                Files.write(scriptOptionsFile.toPath(), content);
+            }
+        } catch (IOException e) {
+            getLogger().warning(SjlUtils.prepareLogMessage("unable to write " + scriptOptionsFile.getAbsolutePath() + ", start script will not use CDS archive", e));
+        }
+    }
+
+    private static String computeFingerprint(List<File> jars) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(System.getProperty("java.home")).append('\n');
+        sb.append(System.getProperty("java.vm.version")).append('\n');
+        sb.append(System.getProperty("java.class.path")).append('\n');
+        for (File jar : jars) {
+            sb.append(jar.getAbsolutePath()).append('|').append(jar.length()).append('|').append(jar.lastModified()).append('\n');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return sb.toString();
+        }
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(SjlCdsSupport.class.getName());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.cds;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Entry point of the training JVM: loads classes recorded by SjlCdsSupport so that
+ * -XX:ArchiveClassesAtExit can put them into the dynamic archive
+ */
+public class SjlCdsTrainer {
+
+    private static ClassLoader applicationClassLoader;
+
+    public static void main(String[] args) throws Exception {
+        List<URL> jars = new ArrayList<>();
+        List<String> launcherClasses = new ArrayList<>();
+        List<String> applicationClasses = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(SjlCdsSupport.JAR_PREFIX)) {
+                    jars.add(new File(line.substring(SjlCdsSupport.JAR_PREFIX.length())).toURI().toURL());
+                } else if (line.startsWith(SjlCdsSupport.LAUNCHER_CLASS_PREFIX)) {
+                    launcherClasses.add(line.substring(SjlCdsSupport.LAUNCHER_CLASS_PREFIX.length()));
+                } else if (line.startsWith(SjlCdsSupport.APPLICATION_CLASS_PREFIX)) {
+                    applicationClasses.add(line.substring(SjlCdsSupport.APPLICATION_CLASS_PREFIX.length()));
+                }
+            }
+        }
+        int loaded = load(launcherClasses, SjlCdsTrainer.class.getClassLoader());
+        // classloader must stay reachable until exit, otherwise its classes are unloaded before the archive is dumped
+        applicationClassLoader = new URLClassLoader(jars.toArray(new URL[0]), SjlCdsTrainer.class.getClassLoader());
+        loaded += load(applicationClasses, applicationClassLoader);
+        System.out.printf("loaded %s of %s classes%n", loaded, launcherClasses.size() + applicationClasses.size());
+    }
+
+    private static int load(List<String> classNames, ClassLoader cl) {
+        int result = 0;
+        for (String className : classNames) {
+            try {
+                // reflection links the class without running static initializers, unlinked classes are not archived
+                Class.forName(className, false, cl).getDeclaredMethods();
+                result++;
+            } catch (Throwable t) {
+                System.out.printf("unable to load %s: %s%n", className, t);
+            }
+        }
+        return result;
+    }
+}
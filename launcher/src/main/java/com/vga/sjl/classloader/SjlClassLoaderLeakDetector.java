@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.classloader;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/*
+ * Checks that discarded application classloader is garbage collected,
+ * if it is still reachable, reports threads and thread locals that keep references to it.
+ */
+public class SjlClassLoaderLeakDetector {
+
+    private static final int GC_ATTEMPTS = 5;
+
+    private static final long GC_PAUSE = 200;
+
+    public static void watch(ClassLoader loader, String description) {
+        WeakReference<ClassLoader> reference = new WeakReference<>(loader);
+        Thread thread = new Thread(() -> check(reference, description), "sjl-classloader-leak-detector");
+        thread.setDaemon(true);
+        thread.setContextClassLoader(SjlClassLoaderLeakDetector.class.getClassLoader());
+        thread.start();
+    }
+
+    private static void check(WeakReference<ClassLoader> reference, String description) {
+        Logger logger = Logger.getLogger(SjlClassLoaderLeakDetector.class.getName());
+        try {
+            for (int n = 0; n < GC_ATTEMPTS; n++) {
+                System.gc();
+                Thread.sleep(GC_PAUSE * (n + 1));
+                if (reference.get() == null) {
+                    logger.info(description + " is garbage collected");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+        ClassLoader loader = reference.get();
+        if (loader == null) {
+            logger.info(description + " is garbage collected");
+            return;
+        }
+        List<String> leaks = findLeaks(loader);
+        StringBuilder sb = new StringBuilder(description).append(" is still reachable after reload");
+        if (leaks.isEmpty()) {
+            sb.append(", no live threads or thread locals refer to it, check static references with a heap dump");
+        }
+        for (String leak : leaks) {
+            sb.append(System.lineSeparator()).append("  ").append(leak);
+        }
+        logger.warning(sb.toString());
+    }
+
+    public static List<String> findLeaks(ClassLoader loader) {
+        List<String> result = new ArrayList<>();
+        Field threadLocalsField = null;
+        Field inheritableThreadLocalsField = null;
+        try {
+            threadLocalsField = Thread.class.getDeclaredField("threadLocals");
+            threadLocalsField.setAccessible(true);
+            inheritableThreadLocalsField = Thread.class.getDeclaredField("inheritableThreadLocals");
+            inheritableThreadLocalsField.setAccessible(true);
+        } catch (Exception e) {
+            // java 9+ requires --add-opens java.base/java.lang=ALL-UNNAMED
+            threadLocalsField = null;
+            result.add("thread locals are not inspected: " + e.getMessage());
+        }
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getContextClassLoader() == loader) {
+                result.add("thread '" + thread.getName() + "' has it as context classloader");
+            }
+            if (isLoadedBy(thread.getClass(), loader)) {
+                result.add("thread '" + thread.getName() + "' is an instance of " + thread.getClass().getName());
+            }
+            if (threadLocalsField != null) {
+                try {
+                    inspectThreadLocals(thread, threadLocalsField.get(thread), loader, result);
+                    inspectThreadLocals(thread, inheritableThreadLocalsField.get(thread), loader, result);
+                } catch (Exception e) {
+                    result.add("thread locals of thread '" + thread.getName() + "' are not inspected: " + e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void inspectThreadLocals(Thread thread, Object map, ClassLoader loader, List<String> result) throws Exception {
+        if (map == null) {
+            return;
+        }
+        Field tableField = map.getClass().getDeclaredField("table");
+        tableField.setAccessible(true);
+        Object[] table = (Object[]) tableField.get(map);
+        if (table == null) {
+            return;
+        }
+        Field valueField = null;
+        for (Object entry : table) {
+            if (entry == null) {
+                continue;
+            }
+            if (valueField == null) {
+                valueField = entry.getClass().getDeclaredField("value");
+                valueField.setAccessible(true);
+            }
+            Object key = ((WeakReference<?>) entry).get();
+            Object value = valueField.get(entry);
+            boolean keyLeaks = key != null && isLoadedBy(key.getClass(), loader);
+            boolean valueLeaks = value != null && (value == loader || isLoadedBy(value.getClass(), loader));
+            if (keyLeaks || valueLeaks) {
+                result.add("thread '" + thread.getName() + "' has thread local " + (key == null ? "<collected>" : key.getClass().getName())
+                        + " with value " + (value == null ? "null" : value.getClass().getName()));
+            }
+        }
+    }
+
+    private static boolean isLoadedBy(Class<?> cls, ClassLoader loader) {
+        for (ClassLoader cl = cls.getClassLoader(); cl != null; cl = cl.getParent()) {
+            if (cl == loader) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
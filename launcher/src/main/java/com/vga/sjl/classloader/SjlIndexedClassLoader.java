@@ -0,0 +1,435 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.classloader;
+
+import com.vga.sjl.utils.SjlUtils;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/*
+ * Classloader that resolves classes and resources through a package->jar and resource->jar index
+ * instead of probing every jar in turn. The index is persisted in the temp directory and every jar
+ * is validated against its size and modification time, so only changed jars are rescanned on later boots.
+ */
+public class SjlIndexedClassLoader extends SjlApplicationClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private static final int INDEX_VERSION = 1;
+
+    private static final int MAX_NEGATIVE_CACHE_SIZE = 10000;
+
+    private static final int[] NO_JARS = new int[0];
+
+    private final File[] jars;
+
+    private final URL[] jarUrls;
+
+    private final AtomicReferenceArray<JarFile> jarFiles;
+
+    private final Map<String, int[]> packageIndex = new HashMap<>();
+
+    private final Map<String, int[]> resourceIndex = new HashMap<>();
+
+    private final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> missingResources = ConcurrentHashMap.newKeySet();
+
+    private final Function<File, JarFile> preopenedJars;
+
+    private volatile boolean closed;
+
+    public SjlIndexedClassLoader(List<File> jars, ClassLoader parent, File indexFile) throws IOException {
+        this(jars, parent, indexFile, null);
+    }
+
+    /*
+     * preopenedJars returns already opened handle for the jar or null if the jar has to be opened by the classloader
+     */
+    public SjlIndexedClassLoader(List<File> jars, ClassLoader parent, File indexFile, Function<File, JarFile> preopenedJars) throws IOException {
+        super(toUrls(jars), parent);
+        this.preopenedJars = preopenedJars;
+        this.jars = jars.toArray(new File[0]);
+        this.jarUrls = getURLs();
+        this.jarFiles = new AtomicReferenceArray<>(this.jars.length);
+        buildIndex(indexFile);
+    }
+
+    private static URL[] toUrls(List<File> jars) throws MalformedURLException {
+        URL[] result = new URL[jars.size()];
+        for (int n = 0; n < result.length; n++) {
+            result[n] = jars.get(n).toURI().toURL();
+        }
+        return result;
+    }
+
+    private void buildIndex(File indexFile) throws IOException {
+        Map<String, JarIndex> cached = readIndex(indexFile);
+        JarIndex[] indexes = new JarIndex[jars.length];
+        AtomicBoolean changed = new AtomicBoolean(cached.size() != jars.length);
+        IntStream.range(0, jars.length).parallel().forEach(n -> {
+            File jar = jars[n];
+            JarIndex existing = cached.get(jar.getAbsolutePath());
+            if (existing != null && existing.size == jar.length() && existing.lastModified == jar.lastModified()) {
+                indexes[n] = existing;
+                return;
+            }
+            indexes[n] = scanJar(n);
+            changed.set(true);
+        });
+        for (int n = 0; n < indexes.length; n++) {
+            for (String pkg : indexes[n].packages) {
+                append(packageIndex, pkg, n);
+            }
+            for (String resource : indexes[n].resources) {
+                append(resourceIndex, resource, n);
+            }
+        }
+        if (changed.get()) {
+            writeIndex(indexFile, indexes);
+        }
+    }
+
+    private static void append(Map<String, int[]> index, String key, int jarIdx) {
+        int[] existing = index.get(key);
+        if (existing == null) {
+            index.put(key, new int[]{jarIdx});
+            return;
+        }
+        int[] updated = Arrays.copyOf(existing, existing.length + 1);
+        updated[existing.length] = jarIdx;
+        index.put(key, updated);
+    }
+
+    private JarIndex scanJar(int jarIdx) {
+        File jar = jars[jarIdx];
+        JarIndex result = new JarIndex(jar.getAbsolutePath(), jar.length(), jar.lastModified());
+        try {
+            JarFile jarFile = getJarFile(jarIdx);
+            Set<String> packages = new LinkedHashSet<>();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class")) {
+                    int idx = name.lastIndexOf('/');
+                    packages.add(idx < 0 ? "" : name.substring(0, idx));
+                } else {
+                    result.resources.add(name);
+                }
+            }
+            result.packages.addAll(packages);
+        } catch (IOException e) {
+            Logger.getLogger(SjlIndexedClassLoader.class.getName()).warning(SjlUtils.prepareLogMessage("unable to index jar " + jar, e));
+        }
+        return result;
+    }
+
+    private static Map<String, JarIndex> readIndex(File indexFile) {
+        Map<String, JarIndex> result = new HashMap<>();
+        if (!indexFile.exists()) {
+            return result;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (dis.readInt() != INDEX_VERSION) {
+                return result;
+            }
+            int jarsCount = dis.readInt();
+            for (int n = 0; n < jarsCount; n++) {
+                JarIndex index = new JarIndex(dis.readUTF(), dis.readLong(), dis.readLong());
+                int packagesCount = dis.readInt();
+                for (int i = 0; i < packagesCount; i++) {
+                    index.packages.add(dis.readUTF());
+                }
+                int resourcesCount = dis.readInt();
+                for (int i = 0; i < resourcesCount; i++) {
+                    index.resources.add(dis.readUTF());
+                }
+                result.put(index.path, index);
+            }
+        } catch (IOException e) {
+            Logger.getLogger(SjlIndexedClassLoader.class.getName()).warning(SjlUtils.prepareLogMessage("unable to read classloader index " + indexFile, e));
+            result.clear();
+        }
+        return result;
+    }
+
+    private static void writeIndex(File indexFile, JarIndex[] indexes) {
+        File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try {
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                dos.writeInt(INDEX_VERSION);
+                dos.writeInt(indexes.length);
+                for (JarIndex index : indexes) {
+                    dos.writeUTF(index.path);
+                    dos.writeLong(index.size);
+                    dos.writeLong(index.lastModified);
+                    dos.writeInt(index.packages.size());
+                    for (String pkg : index.packages) {
+                        dos.writeUTF(pkg);
+                    }
+                    dos.writeInt(index.resources.size());
+                    for (String resource : index.resources) {
+                        dos.writeUTF(resource);
+                    }
+                }
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Logger.getLogger(SjlIndexedClassLoader.class.getName()).warning(SjlUtils.prepareLogMessage("unable to write classloader index " + indexFile, e));
+        }
+    }
+
+    private JarFile getJarFile(int jarIdx) throws IOException {
+        JarFile result = jarFiles.get(jarIdx);
+        if (result != null) {
+            return result;
+        }
+        result = preopenedJars == null ? null : preopenedJars.apply(jars[jarIdx]);
+        if (result == null) {
+            result = new JarFile(jars[jarIdx]);
+        }
+        if (!jarFiles.compareAndSet(jarIdx, null, result)) {
+            result.close();
+            return jarFiles.get(jarIdx);
+        }
+        return result;
+    }
+
+    /*
+     * takes ownership of a handle opened elsewhere, it is closed if the jar is already open or not on the classpath
+     */
+    public void adoptJarFile(File jar, JarFile jarFile) {
+        File file = jar.getAbsoluteFile();
+        for (int n = 0; n < jars.length; n++) {
+            if (jars[n].getAbsoluteFile().equals(file) && !closed && jarFiles.compareAndSet(n, null, jarFile)) {
+                // close() may have passed this slot already
+                if (closed && jarFiles.compareAndSet(n, jarFile, null)) {
+                    break;
+                }
+                return;
+            }
+        }
+        try {
+            jarFile.close();
+        } catch (IOException e) {
+            //noops
+        }
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (missingClasses.contains(name)) {
+            throw new ClassNotFoundException(name);
+        }
+        try {
+            return super.loadClass(name, resolve);
+        } catch (ClassNotFoundException e) {
+            if (missingClasses.size() < MAX_NEGATIVE_CACHE_SIZE) {
+                missingClasses.add(name);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        int idx = name.lastIndexOf('.');
+        int[] candidates = packageIndex.get(idx < 0 ? "" : name.substring(0, idx).replace('.', '/'));
+        if (candidates == null) {
+            throw new ClassNotFoundException(name);
+        }
+        String path = name.replace('.', '/').concat(".class");
+        for (int jarIdx : candidates) {
+            try {
+                JarFile jarFile = getJarFile(jarIdx);
+                JarEntry entry = jarFile.getJarEntry(path);
+                if (entry != null) {
+                    return defineClass(name, idx, jarIdx, jarFile, entry);
+                }
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    private Class<?> defineClass(String name, int packageIdx, int jarIdx, JarFile jarFile, JarEntry entry) throws IOException {
+        byte[] bytes;
+        try (InputStream is = jarFile.getInputStream(entry)) {
+            bytes = readFully(is, entry.getSize());
+        }
+        if (packageIdx > 0) {
+            String packageName = name.substring(0, packageIdx);
+            if (getPackage(packageName) == null) {
+                try {
+                    Manifest manifest = jarFile.getManifest();
+                    if (manifest != null) {
+                        definePackage(packageName, manifest, jarUrls[jarIdx]);
+                    } else {
+                        definePackage(packageName, null, null, null, null, null, null, null);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // package was defined concurrently
+                }
+            }
+        }
+        CodeSigner[] signers = entry.getCodeSigners();
+        Class<?> result = defineClass(name, bytes, 0, bytes.length, new CodeSource(jarUrls[jarIdx], signers));
+        classDefined(name);
+        return result;
+    }
+
+    private static byte[] readFully(InputStream is, long size) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(size > 0 ? (int) size : 8192);
+        byte[] buf = new byte[8192];
+        int len;
+        while ((len = is.read(buf)) != -1) {
+            os.write(buf, 0, len);
+        }
+        return os.toByteArray();
+    }
+
+    @Override
+    public URL getResource(String name) {
+        if (missingResources.contains(name)) {
+            return null;
+        }
+        URL result = super.getResource(name);
+        if (result == null && missingResources.size() < MAX_NEGATIVE_CACHE_SIZE) {
+            missingResources.add(name);
+        }
+        return result;
+    }
+
+    @Override
+    public URL findResource(String name) {
+        for (int jarIdx : getResourceCandidates(name)) {
+            URL url = getResourceUrl(jarIdx, name);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) {
+        List<URL> result = new ArrayList<>();
+        for (int jarIdx : getResourceCandidates(name)) {
+            URL url = getResourceUrl(jarIdx, name);
+            if (url != null) {
+                result.add(url);
+            }
+        }
+        return Collections.enumeration(result);
+    }
+
+    private int[] getResourceCandidates(String name) {
+        int[] result;
+        if (name.endsWith(".class")) {
+            int idx = name.lastIndexOf('/');
+            result = packageIndex.get(idx < 0 ? "" : name.substring(0, idx));
+        } else {
+            result = resourceIndex.get(name);
+        }
+        return result == null ? NO_JARS : result;
+    }
+
+    private URL getResourceUrl(int jarIdx, String name) {
+        try {
+            if (name.endsWith(".class") && getJarFile(jarIdx).getJarEntry(name) == null) {
+                return null;
+            }
+            return new URL("jar:" + jarUrls[jarIdx].toExternalForm() + "!/" + encodePath(name));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String encodePath(String name) {
+        for (int n = 0; n < name.length(); n++) {
+            char c = name.charAt(n);
+            if (c <= ' ' || c >= 0x7f || c == '%' || c == '#' || c == '?' || c == '"' || c == '<' || c == '>') {
+                try {
+                    return new URI(null, null, name, null).getRawPath();
+                } catch (URISyntaxException e) {
+                    return name;
+                }
+            }
+        }
+        return name;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        IOException error = null;
+        for (int n = 0; n < jarFiles.length(); n++) {
+            JarFile jarFile = jarFiles.getAndSet(n, null);
+            if (jarFile != null) {
+                try {
+                    jarFile.close();
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+        super.close();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static class JarIndex {
+        final String path;
+        final long size;
+        final long lastModified;
+        final List<String> packages = new ArrayList<>();
+        final List<String> resources = new ArrayList<>();
+
+        JarIndex(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
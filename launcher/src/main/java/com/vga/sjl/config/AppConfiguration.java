@@ -21,36 +21,225 @@
 
 package com.vga.sjl.config;
 
+import com.vga.sjl.config.impl.SjlConfigurationNodeImpl;
 import com.vga.sjl.config.impl.SjlPropertiesConfigurationProvider;
 import com.vga.sjl.config.impl.SjlYamlConfigurationProvider;
+import com.vga.sjl.config.model.ConfigurationChangeListener;
 import com.vga.sjl.config.model.ConfigurationNode;
 import com.vga.sjl.config.model.ConfigurationProvider;
+import com.vga.sjl.utils.SjlUtils;
 
 import java.io.*;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
 
 public class AppConfiguration implements ConfigurationNode {
 
-    private final ConfigurationProvider provider;
+    private final File file;
+
+    private final boolean yaml;
+
+    private final List<ListenerEntry> listeners = new CopyOnWriteArrayList<>();
+
+    private final Object reloadLock = new Object();
+
+    private static final String PROFILES_PROPERTY = "sjl.profiles";
+
+    private volatile ConfigurationProvider provider;
+
+    private volatile List<String> profiles = Collections.emptyList();
+
+    // overlays of active profiles, the last one has the highest precedence
+    private volatile Map<String, ConfigurationProvider> overlays = Collections.emptyMap();
+
+    // guarded by reloadLock
+    private final Map<String, String> defaults = new HashMap<>();
+
+    private volatile SjlConfigSnapshot snapshot;
+
+    private volatile long version;
+
+    // set by setProperty and setProperties, cleared when the configuration file is written
+    private volatile boolean dirty;
+
+    // the configuration file is being written, it does not match the tree yet
+    private volatile boolean saving;
+
+    // content of the last save to the configuration file, reload skips the file while it is unchanged
+    private volatile byte[] savedContent;
+
+    private volatile long autoSaveDelay = -1;
+
+    private final Object saveLock = new Object();
+
+    // serializes writes of files, manual and automatic saves share the temporary file next to the target
+    private final Object writeLock = new Object();
+
+    // guarded by saveLock
+    private ScheduledExecutorService saveExecutor;
+
+    // save that is not started yet, requests made before it starts are coalesced into it
+    private CompletableFuture<Void> scheduledSave;
+
+    private ScheduledFuture<?> scheduledSaveTask;
+
+    private long scheduledSaveTime;
 
     public static AppConfiguration fromProperties(InputStream is) throws IOException {
-        return new AppConfiguration(new SjlPropertiesConfigurationProvider(is));
+        return new AppConfiguration(new SjlPropertiesConfigurationProvider(is), null, false);
     }
 
     public static AppConfiguration fromProperties(File file) throws IOException {
-        return new AppConfiguration(new SjlPropertiesConfigurationProvider(file));
+        return new AppConfiguration(new SjlPropertiesConfigurationProvider(file), file, false).loadProfiles();
     }
 
     public static AppConfiguration fromYaml(InputStream is) {
-        return new AppConfiguration(new SjlYamlConfigurationProvider(is));
+        return new AppConfiguration(new SjlYamlConfigurationProvider(is), null, true);
     }
 
     public static AppConfiguration fromYaml(File file) throws IOException {
-        return new AppConfiguration(new SjlYamlConfigurationProvider(file));
+        return new AppConfiguration(new SjlYamlConfigurationProvider(file), file, true).loadProfiles();
     }
 
-    private AppConfiguration(ConfigurationProvider provider){
+    private AppConfiguration(ConfigurationProvider provider, File file, boolean yaml){
         this.provider = provider;
+        this.file = file;
+        this.yaml = yaml;
+    }
+
+    private AppConfiguration loadProfiles() throws IOException {
+        profiles = resolveProfiles(provider);
+        overlays = loadOverlays(profiles);
+        return this;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /*
+     * profiles are taken from sjl.profiles, for each profile an overlay file <name>-<profile>.<extension>
+     * next to the configuration file is applied if it exists
+     */
+    public List<String> getProfiles() {
+        return profiles;
+    }
+
+    /*
+     * the configuration file and overlay files of active profiles, including missing ones
+     */
+    public List<File> getSourceFiles() {
+        List<File> result = new ArrayList<>();
+        if (file != null) {
+            result.add(file);
+            for (String profile : profiles) {
+                result.add(getOverlayFile(profile));
+            }
+        }
+        return result;
+    }
+
+    /*
+     * default value used by computeValue when no other source defines the property
+     */
+    public void setDefaultValue(String propertyName, String value) {
+        synchronized (reloadLock) {
+            if (value == null) {
+                defaults.remove(normalizePropertyName(propertyName));
+            } else {
+                defaults.put(normalizePropertyName(propertyName), value);
+            }
+            invalidate();
+        }
+    }
+
+    /*
+     * system properties, environment variables and configuration files are merged into a snapshot used by computeValue
+     * and ConfigKey, call it after changing system properties at runtime
+     */
+    public void refresh() {
+        synchronized (reloadLock) {
+            invalidate();
+        }
+    }
+
+    /*
+     * incremented on every change made by setProperty, reload or refresh, used to invalidate cached ConfigKey values
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void addChangeListener(ConfigurationChangeListener listener) {
+        addChangeListener(null, listener);
+    }
+
+    /*
+     * listener is notified only about keys starting with the prefix
+     */
+    public void addChangeListener(String prefix, ConfigurationChangeListener listener) {
+        listeners.add(new ListenerEntry(prefix, listener));
+    }
+
+    public void removeChangeListener(ConfigurationChangeListener listener) {
+        listeners.removeIf(it -> it.listener == listener);
+    }
+
+    public void clearChangeListeners() {
+        listeners.clear();
+    }
+
+    /*
+     * re-reads the file the configuration was created from, swaps the parsed tree and notifies
+     * listeners about changed keys only; on a parse error the current configuration is kept
+     * while there are unsaved changes the file is not re-read, so they are not lost, profile overlays are
+     */
+    public Set<String> reload() throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("configuration is not loaded from a file");
+        }
+        Set<String> changedKeys;
+        synchronized (reloadLock) {
+            ConfigurationProvider newProvider = provider;
+            List<String> newProfiles = profiles;
+            if (dirty || saving) {
+                Logger.getLogger(AppConfiguration.class.getName()).info(String.format("configuration has unsaved changes, %s is not reloaded", file));
+            } else if (!isSaved(file)) {
+                newProvider = createProvider(file);
+                newProfiles = resolveProfiles(newProvider);
+            }
+            Map<String, ConfigurationProvider> newOverlays = loadOverlays(newProfiles);
+            changedKeys = SjlConfigurationNodeImpl.diff(getRoot(provider), getRoot(newProvider));
+            Set<String> overlayProfiles = new HashSet<>(overlays.keySet());
+            overlayProfiles.addAll(newOverlays.keySet());
+            for (String profile : overlayProfiles) {
+                changedKeys.addAll(SjlConfigurationNodeImpl.diff(getRoot(overlays.get(profile)), getRoot(newOverlays.get(profile))));
+            }
+            if (changedKeys.isEmpty()) {
+                return changedKeys;
+            }
+            provider = newProvider;
+            profiles = newProfiles;
+            overlays = newOverlays;
+            invalidate();
+            changedKeys = Collections.unmodifiableSet(changedKeys);
+            for (ListenerEntry entry : listeners) {
+                Set<String> keys = entry.filter(changedKeys);
+                if (keys.isEmpty()) {
+                    continue;
+                }
+                try {
+                    entry.listener.configurationChanged(this, keys);
+                } catch (Throwable e) {
+                    Logger.getLogger(AppConfiguration.class.getName()).warning(SjlUtils.prepareLogMessage("configuration change listener failed", e));
+                }
+            }
+        }
+        return changedKeys;
     }
 
     @Override
@@ -63,7 +252,119 @@ public class AppConfiguration implements ConfigurationNode {
         return provider.getConfiguration().getValue(propertyName);
     }
 
+    /*
+     * sources in order of precedence: system properties, environment variables, profile overlays,
+     * configuration file, default values; environment variables are also matched in relaxed form (see SjlConfigSnapshot)
+     */
     public String computeValue(String propertyName, String defaultValue){
+        String normalizedPropertyName = normalizePropertyName(propertyName);
+        String result = getSnapshot().get(normalizedPropertyName);
+        return result != null ? result : defaultValue;
+    }
+
+    /*
+     * same as computeValue for lists, string values are split by commas
+     */
+    public List<String> computeValues(String propertyName){
+        String normalizedPropertyName = normalizePropertyName(propertyName);
+        String result = getSnapshot().get(normalizedPropertyName);
+        if(result != null){
+            return splitValues(result);
+        }
+        Object value = null;
+        List<ConfigurationProvider> providers = new ArrayList<>(overlays.values());
+        for(int n = providers.size() - 1; n >= 0 && value == null; n--){
+            value = getRoot(providers.get(n)).getRawValue(normalizedPropertyName);
+        }
+        if(value == null){
+            value = getRoot(provider).getRawValue(normalizedPropertyName);
+        }
+        if(value == null){
+            return null;
+        }
+        if(value instanceof List){
+            List<String> values = new ArrayList<>();
+            for(Object item: (List<?>) value){
+                if(!(item instanceof String)){
+                    throw new IllegalArgumentException(String.format("value with name %s is not a list of strings", normalizedPropertyName));
+                }
+                values.add((String) item);
+            }
+            return values;
+        }
+        throw new IllegalArgumentException(String.format("value with name %s is not a list", normalizedPropertyName));
+    }
+
+    private SjlConfigSnapshot getSnapshot(){
+        SjlConfigSnapshot result = snapshot;
+        if(result == null){
+            synchronized (reloadLock){
+                result = snapshot;
+                if(result == null){
+                    List<Map<String, String>> layers = new ArrayList<>();
+                    layers.add(new HashMap<>(defaults));
+                    layers.add(getRoot(provider).getStringValues());
+                    for(ConfigurationProvider overlay: overlays.values()){
+                        layers.add(getRoot(overlay).getStringValues());
+                    }
+                    Map<String, String> systemProperties = new HashMap<>();
+                    for(String name: System.getProperties().stringPropertyNames()){
+                        systemProperties.put(name, System.getProperty(name));
+                    }
+                    result = SjlConfigSnapshot.build(layers, System.getenv(), systemProperties);
+                    snapshot = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // called under reloadLock
+    private void invalidate(){
+        snapshot = null;
+        version++;
+    }
+
+    private ConfigurationProvider createProvider(File source) throws IOException {
+        return yaml ? new SjlYamlConfigurationProvider(source) : new SjlPropertiesConfigurationProvider(source);
+    }
+
+    private List<String> resolveProfiles(ConfigurationProvider source){
+        String value = System.getProperty(PROFILES_PROPERTY);
+        if(value == null){
+            value = System.getenv(PROFILES_PROPERTY);
+        }
+        if(value == null){
+            value = System.getenv("SJL_PROFILES");
+        }
+        if(value == null){
+            value = source.getConfiguration().getValue(PROFILES_PROPERTY);
+        }
+        return value == null ? Collections.emptyList() : Collections.unmodifiableList(splitValues(value));
+    }
+
+    private Map<String, ConfigurationProvider> loadOverlays(List<String> activeProfiles) throws IOException {
+        Map<String, ConfigurationProvider> result = new LinkedHashMap<>();
+        for(String profile: activeProfiles){
+            File overlay = getOverlayFile(profile);
+            if(overlay.isFile()){
+                result.put(profile, createProvider(overlay));
+            }
+        }
+        return result;
+    }
+
+    private File getOverlayFile(String profile){
+        String name = file.getName();
+        int idx = name.lastIndexOf('.');
+        return new File(file.getParentFile(), name.substring(0, idx) + "-" + profile + name.substring(idx));
+    }
+
+    private static SjlConfigurationNodeImpl getRoot(ConfigurationProvider source){
+        return source == null ? null : (SjlConfigurationNodeImpl) source.getConfiguration();
+    }
+
+    private static String normalizePropertyName(String propertyName){
         String normalizedPropertyName = propertyName;
         if(propertyName != null){
             normalizedPropertyName = propertyName.trim();
@@ -74,19 +375,18 @@ public class AppConfiguration implements ConfigurationNode {
         if(normalizedPropertyName == null){
             throw new IllegalArgumentException("property name must be non empty string");
         }
-        String result = System.getProperty(normalizedPropertyName);
-        if(result != null){
-            return result;
-        }
-        result = System.getenv(normalizedPropertyName);
-        if(result != null){
-            return result;
-        }
-        result = getValue(normalizedPropertyName);
-        if(result != null){
-            return result;
+        return normalizedPropertyName;
+    }
+
+    private static List<String> splitValues(String value){
+        List<String> result = new ArrayList<>();
+        for(String item: value.split(",")){
+            String trimmed = item.trim();
+            if(trimmed.length() > 0){
+                result.add(trimmed);
+            }
         }
-        return defaultValue;
+        return result;
     }
 
     @Override
@@ -105,16 +405,230 @@ public class AppConfiguration implements ConfigurationNode {
     }
 
     public void setProperty(String propertyName, String value){
-        provider.setProperty(propertyName, value);
+        synchronized (reloadLock) {
+            provider.setProperty(propertyName, value);
+            invalidate();
+            markDirty();
+        }
+    }
+
+    /*
+     * concurrent readers see either none or all of the values
+     */
+    public void setProperties(Map<String, String> values){
+        synchronized (reloadLock) {
+            provider.setProperties(values);
+            invalidate();
+            markDirty();
+        }
     }
 
     public void save(OutputStream os) throws IOException {
         provider.save(os);
     }
 
+    /*
+     * the document is written to a temporary file next to the target, synced and renamed over the target,
+     * so a crash leaves either the old or the new file; saving to the configuration file clears unsaved changes
+     */
     public void save(File file) throws IOException {
-        try(OutputStream fos = new FileOutputStream(file)){
-            save(fos);
+        if (this.file != null && this.file.getAbsoluteFile().equals(file.getAbsoluteFile())) {
+            writeFile(true);
+            return;
+        }
+        synchronized (writeLock) {
+            write(file, toByteArray());
+        }
+    }
+
+    /*
+     * writes the configuration file, does nothing if there are no unsaved changes and force is false
+     */
+    private void writeFile(boolean force) throws IOException {
+        synchronized (writeLock) {
+            byte[] content;
+            synchronized (reloadLock) {
+                if (!force && !dirty) {
+                    return;
+                }
+                // changes made while the file is written mark the configuration dirty again
+                dirty = false;
+                saving = true;
+                try {
+                    content = toByteArray();
+                } catch (IOException | RuntimeException e) {
+                    saving = false;
+                    dirty = true;
+                    throw e;
+                }
+            }
+            try {
+                write(file, content);
+                savedContent = content;
+            } catch (IOException | RuntimeException e) {
+                dirty = true;
+                throw e;
+            } finally {
+                saving = false;
+            }
+        }
+    }
+
+    private byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        save(os);
+        return os.toByteArray();
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.write(tmp, content);
+            SjlUtils.fsync(tmp);
+            SjlUtils.atomicMove(tmp, target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        SjlUtils.fsyncDirectory(target.getParent());
+    }
+
+    /*
+     * changes made by setProperty and setProperties are written to the configuration file
+     * in the background after the delay, all changes made within the delay are written at once;
+     * null disables automatic saving
+     */
+    public void setAutoSave(Duration delay){
+        if (delay != null && file == null) {
+            throw new IllegalStateException("configuration is not loaded from a file");
+        }
+        autoSaveDelay = delay == null ? -1 : delay.toMillis();
+        if (delay != null && dirty) {
+            scheduleSave(autoSaveDelay);
+        }
+    }
+
+    public boolean isDirty(){
+        return dirty;
+    }
+
+    /*
+     * writes the configuration file in the background, the future is completed when all changes
+     * made before the call are durable; nothing is written if there are no unsaved changes
+     */
+    public CompletableFuture<Void> saveAsync(){
+        if (file == null) {
+            throw new IllegalStateException("configuration is not loaded from a file");
+        }
+        return scheduleSave(0);
+    }
+
+    /*
+     * waits for the pending automatic save, used on shutdown since the save thread is a daemon
+     */
+    public void flush() throws IOException {
+        boolean pending;
+        synchronized (saveLock) {
+            pending = scheduledSave != null;
+        }
+        if (!pending && !(dirty && autoSaveDelay >= 0)) {
+            return;
+        }
+        try {
+            saveAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while saving configuration");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("unable to save configuration", e.getCause());
+        }
+    }
+
+    private void markDirty(){
+        dirty = true;
+        long delay = autoSaveDelay;
+        if (delay >= 0) {
+            scheduleSave(delay);
+        }
+    }
+
+    private CompletableFuture<Void> scheduleSave(long delay){
+        synchronized (saveLock) {
+            long time = System.currentTimeMillis() + delay;
+            if (scheduledSave != null) {
+                // a request that can not wait for the scheduled save brings it forward
+                if (time < scheduledSaveTime && scheduledSaveTask.cancel(false)) {
+                    scheduledSaveTime = time;
+                    CompletableFuture<Void> future = scheduledSave;
+                    scheduledSaveTask = getSaveExecutor().schedule(() -> runSave(future), delay, TimeUnit.MILLISECONDS);
+                }
+                return scheduledSave;
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            scheduledSave = future;
+            scheduledSaveTime = time;
+            scheduledSaveTask = getSaveExecutor().schedule(() -> runSave(future), delay, TimeUnit.MILLISECONDS);
+            return future;
+        }
+    }
+
+    private ScheduledExecutorService getSaveExecutor(){
+        if (saveExecutor == null) {
+            saveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "sjl-config-save-thread");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return saveExecutor;
+    }
+
+    private void runSave(CompletableFuture<Void> future){
+        synchronized (saveLock) {
+            if (scheduledSave == future) {
+                scheduledSave = null;
+                scheduledSaveTask = null;
+            }
+        }
+        try {
+            writeFile(false);
+            future.complete(null);
+        } catch (Throwable t) {
+            Logger.getLogger(AppConfiguration.class.getName()).warning(SjlUtils.prepareLogMessage("unable to save configuration to " + file, t));
+            future.completeExceptionally(t);
+        }
+    }
+
+    // true if the file still holds what the last save wrote, e.g. the watcher reports our own save
+    private boolean isSaved(File file) throws IOException {
+        byte[] content = savedContent;
+        return content != null && Arrays.equals(content, Files.readAllBytes(file.toPath()));
+    }
+
+    private static class ListenerEntry {
+        final String prefix;
+        final ConfigurationChangeListener listener;
+
+        ListenerEntry(String prefix, ConfigurationChangeListener listener) {
+            this.prefix = prefix;
+            this.listener = listener;
+        }
+
+        Set<String> filter(Set<String> keys) {
+            if (prefix == null) {
+                return keys;
+            }
+            Set<String> result = new TreeSet<>();
+            for (String key : keys) {
+                if (key.equals(prefix) || key.startsWith(prefix + ".")) {
+                    result.add(key);
+                }
+            }
+            return Collections.unmodifiableSet(result);
         }
     }
 }
@@ -0,0 +1,247 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * typed handle of a configuration value, keys are meant to be kept in static fields:
+ * the value is resolved like AppConfiguration.computeValue, parsed once and cached until
+ * the configuration version changes on setProperty, reload or refresh; system properties and
+ * environment variables come from the configuration snapshot, refresh picks up their changes
+ */
+public final class ConfigKey<T> {
+
+    public interface Parser<T> {
+        T parse(String value) throws Exception;
+    }
+
+    private final String name;
+
+    private final T defaultValue;
+
+    private final Parser<T> parser;
+
+    private final Parser<?> itemParser;
+
+    /*
+     * not volatile: Cached is immutable, a stale instance seen by another thread only causes one more resolution
+     */
+    private Cached<T> cached;
+
+    private ConfigKey(String name, T defaultValue, Parser<T> parser, Parser<?> itemParser) {
+        if (name == null || name.trim().length() == 0) {
+            throw new IllegalArgumentException("property name must be non empty string");
+        }
+        this.name = name.trim();
+        this.defaultValue = defaultValue;
+        this.parser = parser;
+        this.itemParser = itemParser;
+    }
+
+    public static <T> ConfigKey<T> of(String name, T defaultValue, Parser<T> parser) {
+        return new ConfigKey<>(name, defaultValue, parser, null);
+    }
+
+    public static ConfigKey<String> ofString(String name, String defaultValue) {
+        return of(name, defaultValue, value -> value);
+    }
+
+    public static ConfigKey<Boolean> ofBoolean(String name, boolean defaultValue) {
+        return of(name, defaultValue, ConfigKey::parseBoolean);
+    }
+
+    public static ConfigKey<Integer> ofInteger(String name, Integer defaultValue) {
+        return of(name, defaultValue, value -> Integer.valueOf(value.trim()));
+    }
+
+    public static ConfigKey<Long> ofLong(String name, Long defaultValue) {
+        return of(name, defaultValue, value -> Long.valueOf(value.trim()));
+    }
+
+    /*
+     * size in bytes, accepts optional suffixes b, k, kb, m, mb, g, gb, t, tb (powers of 1024)
+     */
+    public static ConfigKey<Long> ofByteSize(String name, Long defaultValue) {
+        return of(name, defaultValue, ConfigKey::parseByteSize);
+    }
+
+    /*
+     * a number with an optional unit ns, us, ms, s, m, h, d or ISO-8601 duration, a plain number is milliseconds
+     */
+    public static ConfigKey<Duration> ofDuration(String name, Duration defaultValue) {
+        return of(name, defaultValue, ConfigKey::parseDuration);
+    }
+
+    /*
+     * list values are taken from a configuration list or from a comma separated string
+     */
+    public static <T> ConfigKey<List<T>> ofList(String name, List<T> defaultValue, Parser<T> itemParser) {
+        return new ConfigKey<>(name, defaultValue, null, itemParser);
+    }
+
+    public static ConfigKey<List<String>> ofStringList(String name, List<String> defaultValue) {
+        return ofList(name, defaultValue, value -> value);
+    }
+
+    public static ConfigKey<List<Integer>> ofIntegerList(String name, List<Integer> defaultValue) {
+        return ofList(name, defaultValue, value -> Integer.valueOf(value.trim()));
+    }
+
+    public static ConfigKey<List<Long>> ofByteSizeList(String name, List<Long> defaultValue) {
+        return ofList(name, defaultValue, ConfigKey::parseByteSize);
+    }
+
+    public static ConfigKey<List<Duration>> ofDurationList(String name, List<Duration> defaultValue) {
+        return ofList(name, defaultValue, ConfigKey::parseDuration);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public T get(AppConfiguration config) {
+        long version = config.getVersion();
+        Cached<T> cached = this.cached;
+        if (cached != null && cached.config == config && cached.version == version) {
+            return cached.value;
+        }
+        T value = resolve(config);
+        this.cached = new Cached<>(config, version, value);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T resolve(AppConfiguration config) {
+        try {
+            if (itemParser == null) {
+                String value = config.computeValue(name, null);
+                return value == null ? defaultValue : parser.parse(value);
+            }
+            List<String> values = config.computeValues(name);
+            if (values == null) {
+                return defaultValue;
+            }
+            List<Object> result = new ArrayList<>(values.size());
+            for (String value : values) {
+                result.add(itemParser.parse(value));
+            }
+            return (T) Collections.unmodifiableList(result);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("invalid value of %s: %s", name, e.getMessage()), e);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(String.format("invalid value of %s", name), e);
+        }
+    }
+
+    static Boolean parseBoolean(String value) {
+        String normalized = value.trim().toLowerCase(Locale.ROOT);
+        if ("true".equals(normalized) || "yes".equals(normalized) || "on".equals(normalized)) {
+            return Boolean.TRUE;
+        }
+        if ("false".equals(normalized) || "no".equals(normalized) || "off".equals(normalized)) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException(value + " is not a boolean");
+    }
+
+    static Long parseByteSize(String value) {
+        String normalized = value.trim().toLowerCase(Locale.ROOT);
+        int end = normalized.length();
+        if (end > 1 && normalized.charAt(end - 1) == 'b' && !Character.isDigit(normalized.charAt(end - 2))) {
+            end--;
+        }
+        int shift = 0;
+        switch (end == 0 ? ' ' : normalized.charAt(end - 1)) {
+            case 'k':
+                shift = 10;
+                break;
+            case 'm':
+                shift = 20;
+                break;
+            case 'g':
+                shift = 30;
+                break;
+            case 't':
+                shift = 40;
+                break;
+            case 'b':
+                end--;
+                break;
+        }
+        if (shift != 0) {
+            end--;
+        }
+        long number = Long.parseLong(normalized.substring(0, end).trim());
+        if (number < 0 || (number << shift) >> shift != number) {
+            throw new IllegalArgumentException(value + " is not a valid size");
+        }
+        return number << shift;
+    }
+
+    static Duration parseDuration(String value) {
+        String normalized = value.trim().toLowerCase(Locale.ROOT);
+        if (normalized.startsWith("p") || normalized.startsWith("-p")) {
+            return Duration.parse(normalized.toUpperCase(Locale.ROOT));
+        }
+        int end = normalized.length();
+        while (end > 0 && Character.isLetter(normalized.charAt(end - 1))) {
+            end--;
+        }
+        long number = Long.parseLong(normalized.substring(0, end).trim());
+        switch (normalized.substring(end)) {
+            case "ns":
+                return Duration.ofNanos(number);
+            case "us":
+                return Duration.ofNanos(Math.multiplyExact(number, 1000L));
+            case "":
+            case "ms":
+                return Duration.ofMillis(number);
+            case "s":
+                return Duration.ofSeconds(number);
+            case "m":
+                return Duration.ofMinutes(number);
+            case "h":
+                return Duration.ofHours(number);
+            case "d":
+                return Duration.ofDays(number);
+            default:
+                throw new IllegalArgumentException(value + " has unknown duration unit");
+        }
+    }
+
+    private static final class Cached<T> {
+        final AppConfiguration config;
+        final long version;
+        final T value;
+
+        Cached(AppConfiguration config, long version, T value) {
+            this.config = config;
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
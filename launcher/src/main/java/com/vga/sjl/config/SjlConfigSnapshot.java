@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.config;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * immutable merge of configuration layers, layers are ordered from the lowest precedence to the highest,
+ * then the environment and system properties; names of all layers are matched exactly
+ * environment variables are also bound in relaxed form: SJL_CONTROLPORT binds to sjl.controlPort and sjl.control-port
+ * and overrides them in lower layers, an exact environment name wins over a relaxed one;
+ * only dotted names are bound this way, so HOME or PATH never leak into home or path
+ */
+public final class SjlConfigSnapshot {
+
+    private static final String MISSING = new String();
+
+    private final Map<String, String> exact;
+
+    private final Map<String, String> relaxed;
+
+    // relaxed lookups of names that are not defined exactly, resolved once
+    private final Map<String, String> resolved = new ConcurrentHashMap<>();
+
+    private SjlConfigSnapshot(Map<String, String> exact, Map<String, String> relaxed) {
+        this.exact = exact;
+        this.relaxed = relaxed;
+    }
+
+    public static SjlConfigSnapshot build(List<Map<String, String>> layers, Map<String, String> environment, Map<String, String> systemProperties) {
+        Map<String, String> exact = new HashMap<>();
+        for (Map<String, String> layer : layers) {
+            putAll(exact, layer);
+        }
+        Map<String, String> relaxed = new HashMap<>();
+        for (Map.Entry<String, String> entry : environment.entrySet()) {
+            String name = entry.getKey();
+            if (name != null && entry.getValue() != null && name.indexOf('_') > 0 && name.equals(name.toUpperCase(Locale.ROOT))) {
+                relaxed.put(name.toLowerCase(Locale.ROOT).replace('_', '.'), entry.getValue());
+            }
+        }
+        if (!relaxed.isEmpty()) {
+            for (Map.Entry<String, String> entry : exact.entrySet()) {
+                if (entry.getKey().indexOf('.') >= 0) {
+                    String value = relaxed.get(relax(entry.getKey()));
+                    if (value != null) {
+                        entry.setValue(value);
+                    }
+                }
+            }
+        }
+        putAll(exact, environment);
+        putAll(exact, systemProperties);
+        return new SjlConfigSnapshot(exact, relaxed);
+    }
+
+    public String get(String name) {
+        String result = exact.get(name);
+        if (result != null || relaxed.isEmpty() || name.indexOf('.') < 0) {
+            return result;
+        }
+        result = resolved.get(name);
+        if (result == null) {
+            result = relaxed.get(relax(name));
+            resolved.put(name, result == null ? MISSING : result);
+        }
+        return result == MISSING ? null : result;
+    }
+
+    /*
+     * lower case, dashes removed: sjl.control-port and sjl.controlPort both become sjl.controlport
+     */
+    static String relax(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int n = 0; n < name.length(); n++) {
+            char c = name.charAt(n);
+            if (c != '-') {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void putAll(Map<String, String> target, Map<String, String> layer) {
+        for (Map.Entry<String, String> entry : layer.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                target.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.config;
+
+import com.vga.sjl.utils.SjlUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/*
+ * watches the directory of the configuration file and reloads the configuration
+ * once the file has not been modified for the debounce time
+ */
+public class SjlConfigWatcher extends Thread {
+
+    private final AppConfiguration config;
+
+    private final long debounceTime;
+
+    private final WatchService watchService;
+
+
+    public SjlConfigWatcher(AppConfiguration config, long debounceTime) throws IOException {
+        super("sjl-config-watcher-thread");
+        setDaemon(true);
+        if (config.getFile() == null) {
+            throw new IllegalArgumentException("configuration is not loaded from a file");
+        }
+        this.config = config;
+        this.debounceTime = debounceTime;
+        Path file = config.getFile().getAbsoluteFile().toPath();
+        watchService = file.getFileSystem().newWatchService();
+        /* editors often replace the file, so creation is watched as well, overlay files are in the same directory */
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean changed = pollEvents(key);
+                while (changed) {
+                    key = watchService.poll(debounceTime, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        break;
+                    }
+                    pollEvents(key);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //noops
+        }
+    }
+
+    public void close() {
+        interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            //noops
+        }
+    }
+
+    private boolean pollEvents(WatchKey key) {
+        boolean result = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || isSourceFile(event.context())) {
+                result = true;
+            }
+        }
+        key.reset();
+        return result;
+    }
+
+    private boolean isSourceFile(Object name) {
+        for (File file : config.getSourceFiles()) {
+            if (file.getName().equals(String.valueOf(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reload() {
+        Logger logger = Logger.getLogger(SjlConfigWatcher.class.getName());
+        try {
+            Set<String> changedKeys = config.reload();
+            if (!changedKeys.isEmpty()) {
+                logger.info(String.format("configuration reloaded, changed keys: %s", changedKeys));
+            }
+        } catch (Throwable t) {
+            logger.warning(SjlUtils.prepareLogMessage("unable to reload configuration", t));
+        }
+    }
+}
@@ -29,6 +29,12 @@ public class SjlConfigurationNodeImpl implements ConfigurationNode {
 
     final Map<String, Object> map = new LinkedHashMap<>();
 
+    /*
+     * slice of the index of the tree: values by full name, names with dots are enclosed in brackets,
+     * built by the provider before the tree is published, the index itself is never modified afterwards
+     */
+    private Slice slice;
+
     @Override
     public List<String> getValues(String propertyName) {
         return getValuesInternal(propertyName, List.class);
@@ -63,11 +69,112 @@ public class SjlConfigurationNodeImpl implements ConfigurationNode {
         return result;
     }
 
+    static String escape(String key) {
+        return key.indexOf('.') >= 0 ? "[" + key + "]" : key;
+    }
+
+    /*
+     * must be called once the tree is complete, the root owns the index and every node of the tree looks up
+     * its values with its own path as prefix. Subtrees shared with another tree are switched to the new index
+     * only after it is complete, it holds the same values under their path
+     */
+    void buildIndex() {
+        Map<String, Object> result = new HashMap<>();
+        Map<SjlConfigurationNodeImpl, String> prefixes = new IdentityHashMap<>();
+        collect(result, prefixes, "");
+        for (Map.Entry<SjlConfigurationNodeImpl, String> entry : prefixes.entrySet()) {
+            entry.getKey().slice = new Slice(result, entry.getValue());
+        }
+    }
+
+    private void collect(Map<String, Object> result, Map<SjlConfigurationNodeImpl, String> prefixes, String prefix) {
+        prefixes.put(this, prefix);
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+            String name = prefix + escape(entry.getKey());
+            result.put(name, value);
+            if (value instanceof SjlConfigurationNodeImpl) {
+                ((SjlConfigurationNodeImpl) value).collect(result, prefixes, name + ".");
+            } else if (value instanceof List) {
+                // items are not addressable by name, each of them gets its own index
+                for (Object item : (List<?>) value) {
+                    if (item instanceof SjlConfigurationNodeImpl) {
+                        ((SjlConfigurationNodeImpl) item).buildIndex();
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * returns a copy of the tree with the values set, published trees are never modified:
+     * nodes on the changed paths are copied, other subtrees are shared and switched to the index built for the copy
+     * returns null if a value on a path is not a subconfiguration and replaceValues is false
+     */
+    static SjlConfigurationNodeImpl patch(SjlConfigurationNodeImpl root, Map<List<String>, Object> values, boolean replaceValues) {
+        // nodes copied or created by this patch
+        Set<SjlConfigurationNodeImpl> copies = Collections.newSetFromMap(new IdentityHashMap<>());
+        SjlConfigurationNodeImpl result = root.copy();
+        copies.add(result);
+        for (Map.Entry<List<String>, Object> entry : values.entrySet()) {
+            List<String> parts = entry.getKey();
+            SjlConfigurationNodeImpl node = result;
+            for (int n = 0; n < parts.size(); n++) {
+                String part = parts.get(n);
+                Object child = node.map.get(part);
+                if (n == parts.size() - 1) {
+                    if (child instanceof SjlConfigurationNodeImpl && !replaceValues) {
+                        return null;
+                    }
+                    node.map.put(part, entry.getValue());
+                    break;
+                }
+                SjlConfigurationNodeImpl next;
+                if (child instanceof SjlConfigurationNodeImpl && copies.contains(child)) {
+                    next = (SjlConfigurationNodeImpl) child;
+                } else if (child instanceof SjlConfigurationNodeImpl) {
+                    next = ((SjlConfigurationNodeImpl) child).copy();
+                    copies.add(next);
+                } else {
+                    if (child != null && !replaceValues) {
+                        return null;
+                    }
+                    next = new SjlConfigurationNodeImpl();
+                    copies.add(next);
+                }
+                node.map.put(part, next);
+                node = next;
+            }
+        }
+        result.buildIndex();
+        return result;
+    }
+
+    private SjlConfigurationNodeImpl copy() {
+        SjlConfigurationNodeImpl result = new SjlConfigurationNodeImpl();
+        result.map.putAll(map);
+        return result;
+    }
+
     @SuppressWarnings("unchecked")
     private<T> T getValuesInternal(String propertyName, Class<?> cls) {
         if(propertyName == null || propertyName.length() == 0){
             throw new IllegalArgumentException("property name must be a non empty string");
         }
+        Slice slice = this.slice;
+        if (slice != null) {
+            Object result = slice.index.get(slice.prefix.isEmpty() ? propertyName : slice.prefix.concat(propertyName));
+            if (result != null) {
+                if (!cls.isInstance(result)) {
+                    throw new IllegalArgumentException(String.format("value with name %s is not a %s", propertyName, cls.getSimpleName()));
+                }
+                return (T) result;
+            }
+        }
+        // missing values and names written differently from the index are resolved by walking the tree
         List<String> parts =  split(propertyName);
         Map<String, Object> conf = map;
         for(int n = 0; n < parts.size(); n++){
@@ -105,6 +212,27 @@ public class SjlConfigurationNodeImpl implements ConfigurationNode {
         return getValuesInternal(propertyName, String.class);
     }
 
+    /*
+     * all string values of the subtree by full name
+     */
+    public Map<String, String> getStringValues() {
+        Slice slice = this.slice;
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, Object> entry : slice.index.entrySet()) {
+            if (entry.getValue() instanceof String && entry.getKey().startsWith(slice.prefix)) {
+                result.put(entry.getKey().substring(slice.prefix.length()), (String) entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /*
+     * returns a string, a subconfiguration or a list
+     */
+    public Object getRawValue(String propertyName) {
+        return getValuesInternal(propertyName, Object.class);
+    }
+
     @Override
     public ConfigurationNode getSubConfiguration(String propertyName) {
         return getValuesInternal(propertyName, ConfigurationNode.class);
@@ -120,4 +248,83 @@ public class SjlConfigurationNodeImpl implements ConfigurationNode {
         return new ArrayList<>(map.keySet());
     }
 
+    /*
+     * returns full names of the values that differ in the trees, names with dots are enclosed in brackets
+     * a list is compared as a whole, a value replaced by a subconfiguration is reported with all its keys
+     */
+    public static Set<String> diff(SjlConfigurationNodeImpl oldNode, SjlConfigurationNodeImpl newNode) {
+        Set<String> result = new TreeSet<>();
+        diff(oldNode, newNode, "", result);
+        return result;
+    }
+
+    private static void diff(SjlConfigurationNodeImpl oldNode, SjlConfigurationNodeImpl newNode, String prefix, Set<String> result) {
+        Map<String, Object> oldMap = oldNode == null ? Collections.emptyMap() : oldNode.map;
+        Map<String, Object> newMap = newNode == null ? Collections.emptyMap() : newNode.map;
+        Set<String> keys = new LinkedHashSet<>(oldMap.keySet());
+        keys.addAll(newMap.keySet());
+        for (String key : keys) {
+            String name = prefix + escape(key);
+            Object oldValue = oldMap.get(key);
+            Object newValue = newMap.get(key);
+            if (oldValue instanceof SjlConfigurationNodeImpl || newValue instanceof SjlConfigurationNodeImpl) {
+                if (!(oldValue instanceof SjlConfigurationNodeImpl) && (oldValue != null || oldMap.containsKey(key))) {
+                    result.add(name);
+                }
+                if (!(newValue instanceof SjlConfigurationNodeImpl) && (newValue != null || newMap.containsKey(key))) {
+                    result.add(name);
+                }
+                diff(oldValue instanceof SjlConfigurationNodeImpl ? (SjlConfigurationNodeImpl) oldValue : null,
+                        newValue instanceof SjlConfigurationNodeImpl ? (SjlConfigurationNodeImpl) newValue : null, name + ".", result);
+                continue;
+            }
+            if (oldMap.containsKey(key) != newMap.containsKey(key) || !deepEquals(oldValue, newValue)) {
+                result.add(name);
+            }
+        }
+    }
+
+    private static boolean deepEquals(Object first, Object second) {
+        if (first instanceof SjlConfigurationNodeImpl && second instanceof SjlConfigurationNodeImpl) {
+            Map<String, Object> firstMap = ((SjlConfigurationNodeImpl) first).map;
+            Map<String, Object> secondMap = ((SjlConfigurationNodeImpl) second).map;
+            if (!firstMap.keySet().equals(secondMap.keySet())) {
+                return false;
+            }
+            for (Map.Entry<String, Object> entry : firstMap.entrySet()) {
+                if (!deepEquals(entry.getValue(), secondMap.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (first instanceof List && second instanceof List) {
+            List<?> firstList = (List<?>) first;
+            List<?> secondList = (List<?>) second;
+            if (firstList.size() != secondList.size()) {
+                return false;
+            }
+            for (int n = 0; n < firstList.size(); n++) {
+                if (!deepEquals(firstList.get(n), secondList.get(n))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return Objects.equals(first, second);
+    }
+
+    /*
+     * replaced as a whole, so readers of a shared subtree see either index completely
+     */
+    private static final class Slice {
+        final Map<String, Object> index;
+
+        final String prefix;
+
+        Slice(Map<String, Object> index, String prefix) {
+            this.index = index;
+            this.prefix = prefix;
+        }
+    }
 }
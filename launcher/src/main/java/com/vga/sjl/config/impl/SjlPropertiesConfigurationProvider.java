@@ -30,14 +30,19 @@ import com.vga.sjl.config.model.ConfigurationProvider;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 public class SjlPropertiesConfigurationProvider implements ConfigurationProvider {
     private volatile SjlConfigurationNodeImpl rootNode;
 
     private final List<Object> allLines = new ArrayList<>();
 
+    // first line of each property, setProperty changes the first line
+    private final Map<String, PropertyLine> linesIndex = new HashMap<>();
+
+    // properties defined by several lines, the last line wins in the tree
+    private final Set<String> duplicatedProperties = new HashSet<>();
+
     private static final int SOFT_MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
 
     public SjlPropertiesConfigurationProvider(File file) throws IOException {
@@ -54,6 +59,13 @@ public class SjlPropertiesConfigurationProvider implements ConfigurationProvider
         List<Object> lines = load0(new LineReader(new InputStreamReader(is, StandardCharsets.UTF_8)));
         allLines.clear();
         allLines.addAll(lines);
+        linesIndex.clear();
+        duplicatedProperties.clear();
+        for(Object line: allLines){
+            if(line instanceof PropertyLine && linesIndex.putIfAbsent(((PropertyLine) line).propertyName, (PropertyLine) line) != null){
+                duplicatedProperties.add(((PropertyLine) line).propertyName);
+            }
+        }
         updateRootNode();
     }
 
@@ -80,6 +92,7 @@ public class SjlPropertiesConfigurationProvider implements ConfigurationProvider
             String lastPart = parts[parts.length-1];
             node.map.put(lastPart, propertyLine.propertyValue);
         }
+        result.buildIndex();
         rootNode =result;
     }
 
@@ -89,42 +102,56 @@ public class SjlPropertiesConfigurationProvider implements ConfigurationProvider
     }
 
     @Override
-    public synchronized void setProperty(String propertyName, String value) {
-        String normalizedPropertyName = propertyName;
-        if(propertyName != null){
-            normalizedPropertyName = propertyName.trim();
-            if(normalizedPropertyName.length() == 0){
-                normalizedPropertyName = null;
-            }
-        }
-        if(normalizedPropertyName == null){
-            throw new IllegalArgumentException("property name must be non empty string");
-        }
-        String normalizedPropertyValue = value;
-        if(normalizedPropertyValue != null){
-            normalizedPropertyValue = value.trim();
-            if(normalizedPropertyValue.length() == 0){
-                normalizedPropertyValue = null;
+    public void setProperty(String propertyName, String value) {
+        setProperties(Collections.singletonMap(propertyName, value));
+    }
+
+    @Override
+    public synchronized void setProperties(Map<String, String> values) {
+        Map<String, String> normalizedValues = new LinkedHashMap<>();
+        for(Map.Entry<String, String> entry: values.entrySet()){
+            String propertyName = entry.getKey();
+            String normalizedPropertyName = propertyName;
+            if(propertyName != null){
+                normalizedPropertyName = propertyName.trim();
+                if(normalizedPropertyName.length() == 0){
+                    normalizedPropertyName = null;
+                }
             }
-        }
-        boolean found = false;
-        for (Object obj : allLines) {
-            if (obj instanceof String) {
-                continue;
+            if(normalizedPropertyName == null){
+                throw new IllegalArgumentException("property name must be non empty string");
             }
-
-            if (!found && (obj instanceof PropertyLine)) {
-                PropertyLine existingLine = (PropertyLine) obj;
-                if(normalizedPropertyName.equals(existingLine.propertyName)) {
-                    existingLine.propertyValue = normalizedPropertyValue;
-                    found = true;
+            String value = entry.getValue();
+            String normalizedPropertyValue = value;
+            if(normalizedPropertyValue != null){
+                normalizedPropertyValue = value.trim();
+                if(normalizedPropertyValue.length() == 0){
+                    normalizedPropertyValue = null;
                 }
             }
+            normalizedValues.put(normalizedPropertyName, normalizedPropertyValue);
         }
-        if(!found){
-            allLines.add(new PropertyLine(normalizedPropertyName, normalizedPropertyValue));
+        boolean rebuild = false;
+        Map<List<String>, Object> changes = new LinkedHashMap<>();
+        for(Map.Entry<String, String> entry: normalizedValues.entrySet()){
+            PropertyLine existingLine = linesIndex.get(entry.getKey());
+            if(existingLine != null){
+                existingLine.propertyValue = entry.getValue();
+            } else {
+                PropertyLine line = new PropertyLine(entry.getKey(), entry.getValue());
+                allLines.add(line);
+                linesIndex.put(entry.getKey(), line);
+            }
+            rebuild |= duplicatedProperties.contains(entry.getKey());
+            changes.put(Arrays.asList(entry.getKey().split("\\.")), entry.getValue());
+        }
+        // the tree depends on the order of lines when a property overlaps with another one, so it is built from scratch
+        SjlConfigurationNodeImpl result = rebuild ? null : SjlConfigurationNodeImpl.patch(rootNode, changes, false);
+        if(result == null){
+            updateRootNode();
+        } else {
+            rootNode = result;
         }
-        updateRootNode();
     }
 
     @Override
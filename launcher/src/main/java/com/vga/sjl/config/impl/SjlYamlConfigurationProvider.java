@@ -30,9 +30,7 @@ import com.vga.sjl.external.org.snakeyaml.engine.v2.representer.SjlExtStandardRe
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
 
 public class SjlYamlConfigurationProvider implements ConfigurationProvider {
 
@@ -44,6 +42,9 @@ public class SjlYamlConfigurationProvider implements ConfigurationProvider {
 
     private final SjlExtStandardRepresenter representer = new SjlExtStandardRepresenter(settings);
 
+    // tuples of mapping nodes by key, built lazily and updated by setProperties
+    private final Map<SjlExtMappingNode, Map<String, SjlExtNodeTuple>> tupleIndex = new IdentityHashMap<>();
+
     public SjlYamlConfigurationProvider(InputStream is) {
         init(is);
     }
@@ -61,11 +62,14 @@ public class SjlYamlConfigurationProvider implements ConfigurationProvider {
             root = (SjlExtMappingNode) representer.represent(new HashMap<String, Object>());
         }
         yamlRootNode = root;
+        tupleIndex.clear();
         updateConfigRootNode();
     }
 
     private void updateConfigRootNode() {
-        configRootNode = (SjlConfigurationNodeImpl) getConfigNode(yamlRootNode);
+        SjlConfigurationNodeImpl result = (SjlConfigurationNodeImpl) getConfigNode(yamlRootNode);
+        result.buildIndex();
+        configRootNode = result;
     }
 
     private Object getConfigNode(SjlExtNode node) {
@@ -102,30 +106,47 @@ public class SjlYamlConfigurationProvider implements ConfigurationProvider {
     }
 
     @Override
-    public synchronized void setProperty(String propertyName, String value) {
-        String normalizedPropertyName = propertyName;
-        if(propertyName != null){
-            normalizedPropertyName = propertyName.trim();
-            if(normalizedPropertyName.length() == 0){
-                normalizedPropertyName = null;
+    public void setProperty(String propertyName, String value) {
+        setProperties(Collections.singletonMap(propertyName, value));
+    }
+
+    @Override
+    public synchronized void setProperties(Map<String, String> values) {
+        Map<List<String>, String> normalizedValues = new LinkedHashMap<>();
+        for(Map.Entry<String, String> entry: values.entrySet()){
+            String propertyName = entry.getKey();
+            String normalizedPropertyName = propertyName;
+            if(propertyName != null){
+                normalizedPropertyName = propertyName.trim();
+                if(normalizedPropertyName.length() == 0){
+                    normalizedPropertyName = null;
+                }
             }
-        }
-        if(normalizedPropertyName == null){
-            throw new IllegalArgumentException("property name must be non empty string");
-        }
-        String normalizedPropertyValue = value;
-        if(normalizedPropertyValue != null){
-            normalizedPropertyValue = value.trim();
-            if(normalizedPropertyValue.length() == 0){
-                normalizedPropertyValue = null;
+            if(normalizedPropertyName == null){
+                throw new IllegalArgumentException("property name must be non empty string");
+            }
+            String value = entry.getValue();
+            String normalizedPropertyValue = value;
+            if(normalizedPropertyValue != null){
+                normalizedPropertyValue = value.trim();
+                if(normalizedPropertyValue.length() == 0){
+                    normalizedPropertyValue = null;
+                }
             }
+            normalizedValues.put(SjlConfigurationNodeImpl.split(normalizedPropertyName), normalizedPropertyValue);
         }
-        List<String> parts = SjlConfigurationNodeImpl.split(normalizedPropertyName);
+        Map<List<String>, Object> changes = new LinkedHashMap<>();
+        for(Map.Entry<List<String>, String> entry: normalizedValues.entrySet()){
+            changes.put(entry.getKey(), getConfigNode(setYamlValue(entry.getKey(), entry.getValue())));
+        }
+        configRootNode = SjlConfigurationNodeImpl.patch(configRootNode, changes, true);
+    }
+
+    private SjlExtNode setYamlValue(List<String> parts, String value) {
         SjlExtMappingNode node = yamlRootNode;
         for(int n =0; n< parts.size()-1; n++){
             String part = parts.get(n);
-            SjlExtNodeTuple tuple = node.getValue().stream().filter(it -> part.equals(((SjlExtScalarNode) it.getKeyNode()).getValue()))
-                    .findFirst().orElse(null);
+            SjlExtNodeTuple tuple = getTuples(node).get(part);
             if(tuple != null){
                 if(tuple.getValueNode() instanceof SjlExtMappingNode){
                     node = (SjlExtMappingNode) tuple.getValueNode();
@@ -135,21 +156,31 @@ public class SjlYamlConfigurationProvider implements ConfigurationProvider {
             }
             tuple = new SjlExtNodeTuple(representer.represent(part), representer.represent(new HashMap<>()));
             node.getValue().add(tuple);
+            getTuples(node).put(part, tuple);
             node = (SjlExtMappingNode) tuple.getValueNode();
         }
         String lastPart = parts.get(parts.size() -1);
-        SjlExtNodeTuple tuple = node.getValue().stream().filter(it -> lastPart.equals(((SjlExtScalarNode) it.getKeyNode()).getValue()))
-                .findFirst().orElse(null);
+        SjlExtNodeTuple tuple = getTuples(node).get(lastPart);
         int idx = node.getValue().size();
         if(tuple != null){
             idx = node.getValue().indexOf(tuple);
             node.getValue().remove(tuple);
         }
-        node.getValue().add(idx, new SjlExtNodeTuple(representer.represent(lastPart), representer.represent(normalizedPropertyValue)));
-        updateConfigRootNode();
+        SjlExtNodeTuple newTuple = new SjlExtNodeTuple(representer.represent(lastPart), representer.represent(value));
+        node.getValue().add(idx, newTuple);
+        getTuples(node).put(lastPart, newTuple);
+        return newTuple.getValueNode();
     }
 
-
+    private Map<String, SjlExtNodeTuple> getTuples(SjlExtMappingNode node) {
+        return tupleIndex.computeIfAbsent(node, it -> {
+            Map<String, SjlExtNodeTuple> result = new HashMap<>();
+            for(SjlExtNodeTuple tuple: it.getValue()){
+                result.putIfAbsent(((SjlExtScalarNode) tuple.getKeyNode()).getValue(), tuple);
+            }
+            return result;
+        });
+    }
 
     @Override
     public synchronized void save(OutputStream os) {
@@ -23,9 +23,19 @@ package com.vga.sjl.config.model;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Map;
 
 public interface ConfigurationProvider {
     ConfigurationNode getConfiguration();
     void setProperty(String propertyName, String value);
+    /*
+     * applies all values, built-in providers publish the new configuration at once,
+     * the default implementation applies values one by one
+     */
+    default void setProperties(Map<String, String> values) {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            setProperty(entry.getKey(), entry.getValue());
+        }
+    }
     void save(OutputStream os) throws IOException;
 }
@@ -0,0 +1,206 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.control;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Client of the framed control protocol, connection is kept open for subsequent requests.
+ * Requests can be pipelined: several send() calls followed by the same number of receive() calls.
+ */
+public class SjlControlClient implements AutoCloseable {
+
+    private static final int TIMEOUT = 5000;
+
+    // blocking channels have no read timeout, so unix socket connections are closed when a response is late
+    private static ScheduledExecutorService watchdog;
+
+    private final Closeable connection;
+
+    private final DataInputStream in;
+
+    private final DataOutputStream out;
+
+    private int nextCorrelationId = 1;
+
+    private int timeout = TIMEOUT;
+
+    public SjlControlClient(int port) throws IOException {
+        Socket socket = new Socket();
+        connection = socket;
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getByName("localhost"), port), TIMEOUT);
+            socket.setSoTimeout(TIMEOUT);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.write(SjlControlProtocol.MAGIC);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /*
+     * connects to unix domain socket of the control server, requires java 16 or newer
+     */
+    public SjlControlClient(File socketFile) throws IOException {
+        SocketChannel channel = SjlUnixDomainSockets.connect(socketFile);
+        connection = channel;
+        try {
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.write(SjlControlProtocol.MAGIC);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /*
+     * writes request and returns its correlation id, request is sent when receive() is called or on flush()
+     */
+    public int send(byte command, byte[] payload) throws IOException {
+        int correlationId = nextCorrelationId++;
+        out.writeInt(SjlControlProtocol.HEADER_SIZE - 4 + payload.length);
+        out.writeInt(correlationId);
+        out.writeByte(command);
+        out.write(payload);
+        return correlationId;
+    }
+
+    /*
+     * changes response timeout, e.g. for slow diagnostics commands
+     */
+    public void setTimeout(int timeout) throws IOException {
+        this.timeout = timeout;
+        if (connection instanceof Socket) {
+            ((Socket) connection).setSoTimeout(timeout);
+        }
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public Response receive() throws IOException {
+        out.flush();
+        if (!(connection instanceof SocketChannel)) {
+            return read();
+        }
+        ScheduledFuture<?> closeTask = getWatchdog().schedule(() -> {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                //noops
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        try {
+            return read();
+        } catch (AsynchronousCloseException e) {
+            throw new SocketTimeoutException("no control response in " + timeout + " ms");
+        } finally {
+            closeTask.cancel(false);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getWatchdog() {
+        if (watchdog == null) {
+            watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "sjl-control-client-watchdog-thread");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return watchdog;
+    }
+
+    private Response read() throws IOException {
+        int length = in.readInt();
+        if (length < SjlControlProtocol.HEADER_SIZE - 4 || length > SjlControlProtocol.MAX_RESPONSE_SIZE) {
+            throw new IOException("wrong control response length " + length);
+        }
+        int correlationId = in.readInt();
+        byte status = in.readByte();
+        byte[] payload = new byte[length - (SjlControlProtocol.HEADER_SIZE - 4)];
+        in.readFully(payload);
+        return new Response(correlationId, status, payload);
+    }
+
+    public Response execute(byte command, byte[] payload) throws IOException {
+        int correlationId = send(command, payload);
+        Response response = receive();
+        if (response.correlationId != correlationId) {
+            throw new IOException("unexpected response " + response.correlationId + " for request " + correlationId);
+        }
+        return response;
+    }
+
+    public Response execute(byte command, String payload) throws IOException {
+        return execute(command, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        connection.close();
+    }
+
+    public static class Response {
+        public final int correlationId;
+
+        public final byte status;
+
+        public final byte[] payload;
+
+        public Response(int correlationId, byte status, byte[] payload) {
+            this.correlationId = correlationId;
+            this.status = status;
+            this.payload = payload;
+        }
+
+        public boolean isOk() {
+            return status == SjlControlProtocol.STATUS_OK;
+        }
+
+        public String getText() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.control;
+
+/*
+ * Framed control protocol. Client starts the connection with MAGIC that also carries protocol version,
+ * connections that do not start with it are served with the legacy text protocol.
+ * Request frame: int length, int correlation id, byte command, payload.
+ * Response frame: int length, int correlation id, byte status, payload.
+ * Length covers everything after the length field, all numbers are big endian.
+ * Requests on one connection are processed in order, so clients can pipeline them.
+ */
+public final class SjlControlProtocol {
+
+    public static final byte VERSION = 1;
+
+    static final byte[] MAGIC = {'S', 'J', 'L', VERSION};
+
+    public static final int HEADER_SIZE = 9;
+
+    public static final int MAX_FRAME_SIZE = 64 * 1024;
+
+    // responses are not limited by MAX_FRAME_SIZE since metrics may be large
+    public static final int MAX_RESPONSE_SIZE = 16 * 1024 * 1024;
+
+    public static final byte COMMAND_PING = 1;
+
+    public static final byte COMMAND_STOP = 2;
+
+    public static final byte COMMAND_RESTART = 3;
+
+    public static final byte COMMAND_METRICS = 4;
+
+    public static final byte COMMAND_HEALTH = 5;
+
+    public static final byte COMMAND_READY = 6;
+
+    // diagnostics commands respond with a path of the file with results
+    public static final byte COMMAND_THREAD_DUMP = 7;
+
+    public static final byte COMMAND_CLASS_HISTOGRAM = 8;
+
+    public static final byte COMMAND_JFR_START = 9;
+
+    public static final byte COMMAND_JFR_DUMP = 10;
+
+    public static final byte COMMAND_JFR_STOP = 11;
+
+    // responds with changed keys of the configuration
+    public static final byte COMMAND_RELOAD_CONFIG = 12;
+
+    public static final byte STATUS_OK = 0;
+
+    public static final byte STATUS_ERROR = 1;
+
+    public static final byte STATUS_UNKNOWN_COMMAND = 2;
+
+    private SjlControlProtocol() {
+    }
+}
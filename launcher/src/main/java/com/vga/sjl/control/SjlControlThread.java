@@ -21,79 +21,411 @@
 
 package com.vga.sjl.control;
 
+import com.vga.sjl.config.AppConfiguration;
+import com.vga.sjl.diagnostics.SjlDiagnostics;
+import com.vga.sjl.health.SjlHealthMonitor;
+import com.vga.sjl.metrics.SjlMetricsRegistry;
+import com.vga.sjl.metrics.SjlMetricsWriter;
 import com.vga.sjl.utils.SjlUtils;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
-
+/*
+ * Control server on a selector: connections are served concurrently in a single thread.
+ * Connections that start with SjlControlProtocol.MAGIC use framed protocol, they are kept open
+ * and closed after IDLE_TIMEOUT without requests. Other connections use legacy text protocol:
+ * a command terminated by end of stream, they are closed if the command is not received in READ_TIMEOUT.
+ * Optional http listener serves GET /metrics, /health and /ready on keep-alive connections.
+ * Diagnostics and stop commands are slow, they are executed in worker threads, so the selector keeps serving
+ * probes during shutdown, and the connection does not process next requests until the response is ready.
+ */
 public final class SjlControlThread extends Thread {
-    private final ServerSocket serverSocket;
-    private boolean appRunning;
+    private static final int BACKLOG = 64;
+
+    private static final long READ_TIMEOUT = 5000;
+
+    private static final long IDLE_TIMEOUT = 60000;
+
+    private static final int MAX_LEGACY_REQUEST_SIZE = 256;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final int MODE_UNKNOWN = 0;
+
+    private static final int MODE_LEGACY = 1;
+
+    private static final int MODE_FRAMED = 2;
+
+    private static final int MODE_HTTP = 3;
+
+    private static final byte[] STOP = bytes("STOP");
+
+    private static final byte[] RESTART = bytes("RESTART");
+
+    private static final byte[] PING = bytes("PING");
+
+    private static final byte[] STOP_RESPONSE = bytes("OK: stop done");
+
+    private static final byte[] RESTART_RESPONSE = bytes("RESTART: restart done");
+
+    private static final byte[] PING_RESPONSE = bytes("OK: ");
+
+    private static final byte[] UNKNOWN_COMMAND_RESPONSE = bytes("ERROR: unknown command");
+
+    private static final byte[] STOP_DONE = bytes("stop done");
+
+    private static final byte[] RESTART_DONE = bytes("restart done");
+
+    private static final byte[] UNKNOWN_COMMAND = bytes("unknown command");
+
+    private static final byte[] METRICS = bytes("METRICS");
+
+    private static final byte[] METRICS_DISABLED = bytes("metrics are not enabled");
+
+    private static final byte[] METRICS_DISABLED_RESPONSE = bytes("ERROR: metrics are not enabled");
+
+    private static final byte[] HEALTH = bytes("HEALTH");
+
+    private static final byte[] READY = bytes("READY");
+
+    private static final byte[] OK_PREFIX = bytes("OK: ");
+
+    private static final byte[] ERROR_PREFIX = bytes("ERROR: ");
+
+    private static final byte[] HEALTH_DISABLED = bytes("health monitor is not enabled");
+
+    private static final byte[] DIAGNOSTICS_DISABLED = bytes("diagnostics are not enabled");
+
+    private static final byte[] RELOAD = bytes("RELOAD");
+
+    private static final byte[] RELOAD_DISABLED = bytes("configuration reload is not enabled");
+
+    private static final int DIAGNOSTICS_TIMEOUT = 600000;
+
+    private static final byte[] HTTP_METRICS_REQUEST = bytes("GET /metrics");
+
+    private static final byte[] HTTP_HEALTH_REQUEST = bytes("GET /health");
+
+    private static final byte[] HTTP_READY_REQUEST = bytes("GET /ready");
+
+    private static final byte[] HTTP_GET = bytes("GET ");
+
+    private static final byte[] HTTP_HEADERS_END = bytes("\r\n\r\n");
+
+    private static final byte[] HTTP_CONNECTION_CLOSE = bytes("\r\nconnection: close");
+
+    private static final byte[] HTTP_VERSION_1_0 = bytes(" http/1.0\r\n");
+
+    private static final byte[] HTTP_OK = bytes("HTTP/1.1 200 OK\r\nContent-Type: " + SjlMetricsRegistry.CONTENT_TYPE + "\r\nContent-Length: ");
+
+    private static final byte[] HTTP_PROBE_OK = bytes("HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: ");
+
+    private static final byte[] HTTP_PROBE_FAILED = bytes("HTTP/1.1 503 Service Unavailable\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: ");
+
+    private static final byte[] HTTP_NOT_FOUND = bytes("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n");
+
+    private static final byte[] HTTP_METHOD_NOT_ALLOWED = bytes("HTTP/1.1 405 Method Not Allowed\r\nAllow: GET\r\nContent-Length: 0\r\n");
+
+    private static final byte[] HTTP_BAD_REQUEST = bytes("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+
+    private static final byte[] HTTP_CLOSE_HEADER = bytes("Connection: close\r\n");
+
+    private static final byte[] CRLF = bytes("\r\n");
+
+    private final ServerSocketChannel serverChannel;
+    private final File socketFile;
+    private ServerSocketChannel httpChannel;
+    private SjlMetricsRegistry metrics;
+    private SjlHealthMonitor healthMonitor;
+    private SjlDiagnostics diagnostics;
+    private AppConfiguration configuration;
+    private final ExecutorService workerExecutor;
+    // tasks posted to the selector thread by worker threads
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+    // selector thread renders all metrics responses, so the buffer is shared
+    private final SjlMetricsWriter metricsWriter = new SjlMetricsWriter();
+    private final Selector selector;
+    private volatile boolean appRunning;
     private final Callable<Void> stopCallback;
     private volatile boolean restartApp;
 
-
     interface RequestHandler {
 
-        byte[] getRequest();
+        byte getCommand();
+
+        byte[] getPayload();
 
-        boolean handleResponse(String response);
+        boolean handleResponse(SjlControlClient.Response response);
 
     }
 
-    static boolean makeRequest(int port, RequestHandler handler) {
-        try {
-            InetAddress host = InetAddress.getByName("localhost");
-            try (Socket socket = new Socket(host, port)) {
-                socket.setKeepAlive(true);
-                InputStream in = null;
-                try (OutputStream out = socket.getOutputStream()) {
-                    println("found running control service on " + host + ":" + port);
-                    out.write(handler.getRequest());
-                    out.flush();
-                    socket.shutdownOutput();
-                    in = socket.getInputStream();
-                    StringBuilder commandResult = new StringBuilder();
-                    byte[] buf = new byte[16];
-
-                    int len;
-                    while ((len = in.read(buf)) != -1) {
-                        commandResult.append(new String(buf, 0, len));
-                    }
+    interface ClientFactory {
 
-                    socket.shutdownInput();
-                    String result = commandResult.toString();
-                    return handler.handleResponse(result);
-                } finally {
-                    if (in != null) in.close();
-                }
-            }
+        SjlControlClient open() throws IOException;
+
+    }
+
+    static boolean makeRequest(ClientFactory clientFactory, String address, RequestHandler handler) {
+        try (SjlControlClient client = clientFactory.open()) {
+            println("found running control service on " + address);
+            return handler.handleResponse(client.execute(handler.getCommand(), handler.getPayload()));
         } catch (IOException e) {
-            println("seems that there is no control service running on localhost" + ": " + port);
+            println("seems that there is no control service running on " + address);
             return false;
         }
     }
 
+    public static boolean isUnixSocketSupported() {
+        return SjlUnixDomainSockets.isSupported();
+    }
+
     public static boolean isApplicationRunning(int port) {
+        return makeRequest(() -> new SjlControlClient(port), "localhost:" + port, createPingHandler());
+    }
+
+    public static boolean isApplicationRunning(File socketFile) {
+        return makeRequest(() -> new SjlControlClient(socketFile), socketFile.getPath(), createPingHandler());
+    }
+
+    /*
+     * the response is sent when the application is stopped, so timeout has to cover the whole shutdown
+     */
+    public static boolean stopRunningApplication(int port, int timeout) {
+        return makeRequest(() -> {
+            SjlControlClient client = new SjlControlClient(port);
+            client.setTimeout(timeout);
+            return client;
+        }, "localhost:" + port, createStopHandler());
+    }
+
+    public static boolean stopRunningApplication(File socketFile, int timeout) {
+        return makeRequest(() -> {
+            SjlControlClient client = new SjlControlClient(socketFile);
+            client.setTimeout(timeout);
+            return client;
+        }, socketFile.getPath(), createStopHandler());
+    }
+
+    public static final int STATUS_READY = 0;
+
+    public static final int STATUS_NOT_RUNNING = 1;
+
+    public static final int STATUS_STARTED = 3;
+
+    public static final int STATUS_DEGRADED = 4;
+
+    public static int getApplicationStatus(int port) {
+        return getApplicationStatus(() -> new SjlControlClient(port), "localhost:" + port);
+    }
+
+    public static int getApplicationStatus(File socketFile) {
+        return getApplicationStatus(() -> new SjlControlClient(socketFile), socketFile.getPath());
+    }
+
+    /*
+     * returns STATUS_* constant, launchers without health commands are considered ready when they answer PING
+     */
+    static int getApplicationStatus(ClientFactory clientFactory, String address) {
+        try (SjlControlClient client = clientFactory.open()) {
+            println("found running control service on " + address);
+            client.send(SjlControlProtocol.COMMAND_PING, new byte[0]);
+            client.send(SjlControlProtocol.COMMAND_READY, new byte[0]);
+            client.send(SjlControlProtocol.COMMAND_HEALTH, new byte[0]);
+            SjlControlClient.Response ping = client.receive();
+            SjlControlClient.Response ready = client.receive();
+            SjlControlClient.Response health = client.receive();
+            int status = toStatus(ping, ready, health);
+            String details = getStatusDetails(status, ready, health);
+            println("application is " + getStatusName(status) + (details.isEmpty() ? "" : ": " + details));
+            return status;
+        } catch (IOException e) {
+            println("seems that there is no control service running on " + address);
+            return STATUS_NOT_RUNNING;
+        }
+    }
+
+    public static boolean requestDiagnostics(int port, String name, String argument) {
+        return makeRequest(() -> {
+            SjlControlClient client = new SjlControlClient(port);
+            client.setTimeout(DIAGNOSTICS_TIMEOUT);
+            return client;
+        }, "localhost:" + port, createDiagnosticsHandler(name, argument));
+    }
+
+    public static boolean requestDiagnostics(File socketFile, String name, String argument) {
+        return makeRequest(() -> {
+            SjlControlClient client = new SjlControlClient(socketFile);
+            client.setTimeout(DIAGNOSTICS_TIMEOUT);
+            return client;
+        }, socketFile.getPath(), createDiagnosticsHandler(name, argument));
+    }
+
+    /*
+     * name is one of threads, histogram, jfr-start, jfr-dump, jfr-stop
+     */
+    private static RequestHandler createDiagnosticsHandler(String name, String argument) {
+        byte command;
+        switch (name) {
+            case "threads":
+                command = SjlControlProtocol.COMMAND_THREAD_DUMP;
+                break;
+            case "histogram":
+                command = SjlControlProtocol.COMMAND_CLASS_HISTOGRAM;
+                break;
+            case "jfr-start":
+                command = SjlControlProtocol.COMMAND_JFR_START;
+                break;
+            case "jfr-dump":
+                command = SjlControlProtocol.COMMAND_JFR_DUMP;
+                break;
+            case "jfr-stop":
+                command = SjlControlProtocol.COMMAND_JFR_STOP;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown diagnostics command " + name + ", expected threads, histogram, jfr-start, jfr-dump or jfr-stop");
+        }
+        return new RequestHandler() {
+            @Override
+            public byte getCommand() {
+                return command;
+            }
+
+            @Override
+            public byte[] getPayload() {
+                return bytes(argument);
+            }
+
+            @Override
+            public boolean handleResponse(SjlControlClient.Response response) {
+                if (response.isOk()) {
+                    System.out.println(response.getText());
+                    return true;
+                } else {
+                    println("diagnostics command failed: " + response.getText());
+                    return false;
+                }
+            }
+        };
+    }
+
+    /*
+     * evaluates responses of pipelined PING, READY and HEALTH commands
+     */
+    static int toStatus(SjlControlClient.Response ping, SjlControlClient.Response ready, SjlControlClient.Response health) {
+        if (!ping.isOk()) {
+            return STATUS_NOT_RUNNING;
+        }
+        if (health.status != SjlControlProtocol.STATUS_UNKNOWN_COMMAND && !health.isOk()) {
+            return STATUS_DEGRADED;
+        }
+        if (ready.status != SjlControlProtocol.STATUS_UNKNOWN_COMMAND && !ready.isOk()) {
+            return STATUS_STARTED;
+        }
+        return STATUS_READY;
+    }
+
+    static String getStatusDetails(int status, SjlControlClient.Response ready, SjlControlClient.Response health) {
+        switch (status) {
+            case STATUS_DEGRADED:
+                return health.getText();
+            case STATUS_STARTED:
+                return ready.getText();
+            default:
+                return "";
+        }
+    }
+
+    public static String getStatusName(int status) {
+        switch (status) {
+            case STATUS_READY:
+                return "ready";
+            case STATUS_STARTED:
+                return "started";
+            case STATUS_DEGRADED:
+                return "degraded";
+            default:
+                return "not running";
+        }
+    }
+
+    public static boolean printMetrics(int port) {
+        return makeRequest(() -> new SjlControlClient(port), "localhost:" + port, createMetricsHandler());
+    }
+
+    public static boolean printMetrics(File socketFile) {
+        return makeRequest(() -> new SjlControlClient(socketFile), socketFile.getPath(), createMetricsHandler());
+    }
+
+    public static boolean reloadConfiguration(int port) {
+        return makeRequest(() -> new SjlControlClient(port), "localhost:" + port, createReloadHandler());
+    }
+
+    public static boolean reloadConfiguration(File socketFile) {
+        return makeRequest(() -> new SjlControlClient(socketFile), socketFile.getPath(), createReloadHandler());
+    }
+
+    private static RequestHandler createReloadHandler() {
+        return new RequestHandler() {
+            @Override
+            public byte getCommand() {
+                return SjlControlProtocol.COMMAND_RELOAD_CONFIG;
+            }
+
+            @Override
+            public byte[] getPayload() {
+                return new byte[0];
+            }
+
+            @Override
+            public boolean handleResponse(SjlControlClient.Response response) {
+                if (response.isOk()) {
+                    println("RELOAD command succeed: " + response.getText());
+                    return true;
+                } else {
+                    println("RELOAD command failed: " + response.getText());
+                    return false;
+                }
+            }
+        };
+    }
+
+    private static RequestHandler createPingHandler() {
 
-        return makeRequest(port, new RequestHandler() {
+        return new RequestHandler() {
             private final String test = "" + System.currentTimeMillis();
 
             @Override
-            public byte[] getRequest() {
-                return ("PING " + test).getBytes();
+            public byte getCommand() {
+                return SjlControlProtocol.COMMAND_PING;
+            }
+
+            @Override
+            public byte[] getPayload() {
+                return bytes(test);
             }
 
             @Override
-            public boolean handleResponse(String response) {
-                if (response.startsWith("OK") && response.contains(test)) {
+            public boolean handleResponse(SjlControlClient.Response response) {
+                if (response.isOk() && test.equals(response.getText())) {
                     println("PING command succeed");
                     return true;
                 } else {
@@ -101,19 +433,24 @@ public final class SjlControlThread extends Thread {
                     return false;
                 }
             }
-        });
+        };
     }
 
-    public static boolean stopRunningApplication(int port) {
-        return makeRequest(port, new RequestHandler() {
+    private static RequestHandler createStopHandler() {
+        return new RequestHandler() {
             @Override
-            public byte[] getRequest() {
-                return "STOP".getBytes();
+            public byte getCommand() {
+                return SjlControlProtocol.COMMAND_STOP;
             }
 
             @Override
-            public boolean handleResponse(String response) {
-                if (response.startsWith("OK")) {
+            public byte[] getPayload() {
+                return new byte[0];
+            }
+
+            @Override
+            public boolean handleResponse(SjlControlClient.Response response) {
+                if (response.isOk()) {
                     println("STOP command succeed");
                     return true;
                 } else {
@@ -121,36 +458,178 @@ public final class SjlControlThread extends Thread {
                     return false;
                 }
             }
-        });
+        };
+    }
+
+    private static RequestHandler createMetricsHandler() {
+        return new RequestHandler() {
+            @Override
+            public byte getCommand() {
+                return SjlControlProtocol.COMMAND_METRICS;
+            }
+
+            @Override
+            public byte[] getPayload() {
+                return new byte[0];
+            }
+
+            @Override
+            public boolean handleResponse(SjlControlClient.Response response) {
+                if (response.isOk()) {
+                    System.out.print(response.getText());
+                    return true;
+                } else {
+                    println("METRICS command failed: " + response.getText());
+                    return false;
+                }
+            }
+        };
     }
 
     public SjlControlThread(int port, Callable<Void> stopCallback) throws Exception {
-        InetAddress host = InetAddress.getByName("localhost");
-        this.serverSocket = new ServerSocket(port, 1, host);
+        this(bindTcp(port), null, stopCallback);
+    }
+
+    /*
+     * control server on unix domain socket, requires java 16 or newer
+     */
+    public SjlControlThread(File socketFile, Callable<Void> stopCallback) throws Exception {
+        this(SjlUnixDomainSockets.bind(socketFile, BACKLOG), socketFile, stopCallback);
+    }
+
+    /*
+     * server without control channel, it only serves metrics http listener bound with bindMetricsListener
+     */
+    public SjlControlThread(SjlMetricsRegistry metrics) throws Exception {
+        this(null, null, null);
+        this.metrics = metrics;
+        this.appRunning = false;
+        this.setName("sjl-metrics-thread");
+        this.setDaemon(true);
+    }
+
+    private SjlControlThread(ServerSocketChannel serverChannel, File socketFile, Callable<Void> stopCallback) throws Exception {
+        this.serverChannel = serverChannel;
+        this.socketFile = socketFile;
+        try {
+            this.selector = Selector.open();
+            if (serverChannel != null) {
+                this.serverChannel.configureBlocking(false);
+                this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            }
+        } catch (IOException e) {
+            if (serverChannel != null) {
+                this.serverChannel.close();
+            }
+            throw e;
+        }
+        ClassLoader launcherLoader = SjlControlThread.class.getClassLoader();
+        this.workerExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "sjl-control-worker-thread");
+            thread.setDaemon(true);
+            thread.setContextClassLoader(launcherLoader);
+            return thread;
+        });
         this.appRunning = true;
         this.stopCallback = stopCallback;
         this.setName("sjl-application-control-thread");
     }
 
+    public void setMetrics(SjlMetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setHealthMonitor(SjlHealthMonitor healthMonitor) {
+        this.healthMonitor = healthMonitor;
+    }
+
+    public void setDiagnostics(SjlDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    public void setConfiguration(AppConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /*
+     * starts http listener for prometheus scrapes, it is served by the same selector, must be called before start()
+     */
+    public void bindMetricsListener(String host, int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(InetAddress.getByName(host), port), BACKLOG);
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        httpChannel = channel;
+    }
+
+    private static ServerSocketChannel bindTcp(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(InetAddress.getByName("localhost"), port), BACKLOG);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
     public void run() {
         try {
-            while (true) {
-                try {
-                    try (Socket clientSocket = this.serverSocket.accept()) {
-                        if (this.handleRequest(clientSocket)) {
-                            break;
+            boolean finished = false;
+            while (!finished) {
+                long now = System.currentTimeMillis();
+                long nextDeadline = expireConnections(now);
+                selector.select(Math.max(1, nextDeadline - now));
+                Runnable completion;
+                while ((completion = completions.poll()) != null) {
+                    completion.run();
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept((ServerSocketChannel) key.channel());
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            finished |= write(key);
                         }
-                    } catch (Exception e) {
-                        //noops
+                    } catch (IOException e) {
+                        close(key);
                     }
-                } catch (Exception e) {
-                    println(SjlUtils.prepareLogMessage("error on server socket", e));
-                    break;
                 }
             }
+        } catch (Exception e) {
+            println(SjlUtils.prepareLogMessage("error on server socket", e));
         } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            workerExecutor.shutdownNow();
             try {
-                this.serverSocket.close();
+                this.selector.close();
+                if (this.serverChannel != null) {
+                    this.serverChannel.close();
+                }
+                if (this.httpChannel != null) {
+                    this.httpChannel.close();
+                }
+                if (socketFile != null) {
+                    Files.deleteIfExists(socketFile.toPath());
+                }
             } catch (IOException e) {
                 println(SjlUtils.prepareLogMessage("error closing server socket", e));
             }
@@ -164,73 +643,555 @@ public final class SjlControlThread extends Thread {
         }
     }
 
-    private synchronized boolean handleRequest(Socket clientSocket) {
-        try {
-            if (!this.isValidHost(clientSocket.getInetAddress())) {
-                println("incoming connection to control socket registered from REMOTE address " + clientSocket.getInetAddress() + ", attempt to execute command was IGNORED");
-
-                try {
-                    clientSocket.close();
-                } catch (IOException e) {
-                    //nopps
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            if (server == httpChannel) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+                Connection connection = new Connection(System.currentTimeMillis() + READ_TIMEOUT);
+                connection.mode = MODE_HTTP;
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                continue;
+            }
+            // unix domain socket is protected by file permissions
+            if (socketFile == null) {
+                InetAddress address = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+                if (!this.isValidHost(address)) {
+                    println("incoming connection to control socket registered from REMOTE address " + address + ", attempt to execute command was IGNORED");
+                    channel.close();
+                    continue;
                 }
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            channel.configureBlocking(false);
+            Connection connection = new Connection(System.currentTimeMillis() + READ_TIMEOUT);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
 
-                return false;
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (channel.read(connection.in) == -1) {
+            connection.inputClosed = true;
+        }
+        if (connection.mode == MODE_UNKNOWN) {
+            if (connection.in.position() < SjlControlProtocol.MAGIC.length && !connection.inputClosed) {
+                return;
+            }
+            connection.in.flip();
+            if (startsWith(connection.in, SjlControlProtocol.MAGIC)) {
+                connection.mode = MODE_FRAMED;
+                connection.in.position(SjlControlProtocol.MAGIC.length);
+            } else {
+                connection.mode = MODE_LEGACY;
             }
-        } catch (Throwable t) {
+            connection.in.compact();
+        }
+        if (connection.mode == MODE_HTTP) {
+            connection.deadline = System.currentTimeMillis() + IDLE_TIMEOUT;
+            processHttpRequests(connection);
+        } else if (connection.mode == MODE_LEGACY) {
+            if (connection.inputClosed) {
+                connection.in.flip();
+                handleLegacyRequest(connection);
+                connection.closeAfterWrite = true;
+            } else if (connection.in.position() >= MAX_LEGACY_REQUEST_SIZE) {
+                connection.out.put(UNKNOWN_COMMAND_RESPONSE);
+                connection.closeAfterWrite = true;
+            }
+        } else {
+            connection.deadline = System.currentTimeMillis() + IDLE_TIMEOUT;
+            if (!processFrames(connection)) {
+                close(key);
+                return;
+            }
+        }
+        updateInterest(key, connection);
+    }
+
+    /*
+     * returns true if control server has to be stopped after the response is sent
+     */
+    private boolean write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        connection.out.flip();
+        ((SocketChannel) key.channel()).write(connection.out);
+        connection.out.compact();
+        if (connection.out.position() > 0) {
             return false;
         }
+        if (connection.closeAfterWrite || (connection.inputClosed && !connection.waiting)) {
+            close(key);
+            return connection.stopServer;
+        }
+        updateInterest(key, connection);
+        return false;
+    }
 
+    private static void updateInterest(SelectionKey key, Connection connection) {
+        if (connection.waiting) {
+            // next requests are not read until the pending response is ready
+            key.interestOps(connection.out.position() > 0 ? SelectionKey.OP_WRITE : 0);
+        } else if (connection.out.position() > 0) {
+            key.interestOps(connection.inputClosed || connection.closeAfterWrite ? SelectionKey.OP_WRITE : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else if (connection.inputClosed) {
+            close(key);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
 
-        boolean result = false;
+    /*
+     * handles all complete frames from input buffer, returns false on protocol error
+     */
+    private boolean processFrames(Connection connection) {
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= 4 && !connection.closeAfterWrite && !connection.waiting) {
+            int length = in.getInt(in.position());
+            if (length < SjlControlProtocol.HEADER_SIZE - 4 || length > SjlControlProtocol.MAX_FRAME_SIZE) {
+                return false;
+            }
+            if (in.remaining() < length + 4) {
+                break;
+            }
+            int start = in.position();
+            int correlationId = in.getInt(start + 4);
+            byte command = in.get(start + 8);
+            handleCommand(connection, correlationId, command, in, start + SjlControlProtocol.HEADER_SIZE, start + 4 + length);
+            in.position(start + 4 + length);
+        }
+        in.compact();
+        if (in.position() >= 4) {
+            int required = in.getInt(0) + 4;
+            if (required > in.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(required);
+                in.flip();
+                larger.put(in);
+                connection.in = larger;
+            }
+        }
+        return true;
+    }
 
-        OutputStream out = null;
-        try (InputStream in = clientSocket.getInputStream()) {
-            StringBuilder command = new StringBuilder();
-            byte[] buf = new byte[16];
+    private void handleCommand(Connection connection, int correlationId, byte command, ByteBuffer in, int payloadStart, int payloadEnd) {
+        switch (command) {
+            case SjlControlProtocol.COMMAND_PING:
+                respond(connection, correlationId, SjlControlProtocol.STATUS_OK, in, payloadStart, payloadEnd);
+                break;
+            case SjlControlProtocol.COMMAND_STOP:
+                executeAsync(connection, () -> {
+                    this.stopApplication();
+                    return c -> {
+                        c.closeAfterWrite = true;
+                        c.stopServer = true;
+                        respond(c, correlationId, SjlControlProtocol.STATUS_OK, STOP_DONE);
+                    };
+                });
+                break;
+            case SjlControlProtocol.COMMAND_METRICS:
+                if (metrics == null) {
+                    respond(connection, correlationId, SjlControlProtocol.STATUS_ERROR, METRICS_DISABLED);
+                    break;
+                }
+                metricsWriter.reset();
+                metrics.render(metricsWriter);
+                ByteBuffer out = connection.ensureOut(SjlControlProtocol.HEADER_SIZE + metricsWriter.size());
+                out.putInt(SjlControlProtocol.HEADER_SIZE - 4 + metricsWriter.size());
+                out.putInt(correlationId);
+                out.put(SjlControlProtocol.STATUS_OK);
+                metricsWriter.writeTo(out);
+                break;
+            case SjlControlProtocol.COMMAND_HEALTH:
+            case SjlControlProtocol.COMMAND_READY:
+                if (healthMonitor == null) {
+                    respond(connection, correlationId, SjlControlProtocol.STATUS_ERROR, HEALTH_DISABLED);
+                    break;
+                }
+                SjlHealthMonitor.Result result = command == SjlControlProtocol.COMMAND_HEALTH ? healthMonitor.getHealth() : healthMonitor.getReadiness();
+                respond(connection, correlationId, result.isOk() ? SjlControlProtocol.STATUS_OK : SjlControlProtocol.STATUS_ERROR, result.getMessageBytes());
+                break;
+            case SjlControlProtocol.COMMAND_THREAD_DUMP:
+            case SjlControlProtocol.COMMAND_CLASS_HISTOGRAM:
+            case SjlControlProtocol.COMMAND_JFR_START:
+            case SjlControlProtocol.COMMAND_JFR_DUMP:
+            case SjlControlProtocol.COMMAND_JFR_STOP:
+                if (diagnostics == null) {
+                    respond(connection, correlationId, SjlControlProtocol.STATUS_ERROR, DIAGNOSTICS_DISABLED);
+                    break;
+                }
+                byte[] argument = new byte[payloadEnd - payloadStart];
+                for (int n = 0; n < argument.length; n++) {
+                    argument[n] = in.get(payloadStart + n);
+                }
+                executeDiagnostics(connection, correlationId, command, new String(argument, StandardCharsets.UTF_8).trim());
+                break;
+            case SjlControlProtocol.COMMAND_RELOAD_CONFIG:
+                if (configuration == null) {
+                    respond(connection, correlationId, SjlControlProtocol.STATUS_ERROR, RELOAD_DISABLED);
+                    break;
+                }
+                executeAsync(connection, () -> {
+                    byte status = SjlControlProtocol.STATUS_OK;
+                    byte[] payload;
+                    try {
+                        payload = bytes(reloadConfiguration());
+                    } catch (Throwable t) {
+                        status = SjlControlProtocol.STATUS_ERROR;
+                        payload = bytes(String.valueOf(t));
+                    }
+                    byte responseStatus = status;
+                    byte[] responsePayload = payload;
+                    return c -> respond(c, correlationId, responseStatus, responsePayload);
+                });
+                break;
+            case SjlControlProtocol.COMMAND_RESTART:
+                executeAsync(connection, () -> {
+                    this.stopApplication();
+                    restartApp = true;
+                    return c -> {
+                        c.closeAfterWrite = true;
+                        c.stopServer = true;
+                        respond(c, correlationId, SjlControlProtocol.STATUS_OK, RESTART_DONE);
+                    };
+                });
+                break;
+            default:
+                respond(connection, correlationId, SjlControlProtocol.STATUS_UNKNOWN_COMMAND, UNKNOWN_COMMAND);
+        }
+    }
 
-            int len;
-            while ((len = in.read(buf)) != -1) {
-                command.append(new String(buf, 0, len));
+    private void executeDiagnostics(Connection connection, int correlationId, byte command, String argument) {
+        executeAsync(connection, () -> {
+            byte status = SjlControlProtocol.STATUS_OK;
+            byte[] payload;
+            try {
+                payload = bytes(runDiagnostics(command, argument));
+            } catch (Throwable t) {
+                status = SjlControlProtocol.STATUS_ERROR;
+                payload = bytes(String.valueOf(t));
             }
+            byte responseStatus = status;
+            byte[] responsePayload = payload;
+            return c -> respond(c, correlationId, responseStatus, responsePayload);
+        });
+    }
+
+    private String reloadConfiguration() throws IOException {
+        Set<String> changedKeys = configuration.reload();
+        if (!changedKeys.isEmpty()) {
+            Logger.getLogger(SjlControlThread.class.getName()).info(String.format("configuration reloaded, changed keys: %s", changedKeys));
+        }
+        return changedKeys.size() + " keys changed" + (changedKeys.isEmpty() ? "" : ": " + String.join(", ", changedKeys));
+    }
+
+    private String runDiagnostics(byte command, String argument) throws Exception {
+        switch (command) {
+            case SjlControlProtocol.COMMAND_THREAD_DUMP:
+                return diagnostics.dumpThreads().getPath();
+            case SjlControlProtocol.COMMAND_CLASS_HISTOGRAM:
+                return diagnostics.dumpClassHistogram("all".equals(argument)).getPath();
+            case SjlControlProtocol.COMMAND_JFR_START:
+                return diagnostics.startRecording(argument);
+            case SjlControlProtocol.COMMAND_JFR_DUMP:
+                return diagnostics.dumpRecording().getPath();
+            default:
+                return diagnostics.stopRecording().getPath();
+        }
+    }
+
+    /*
+     * runs request in a worker thread, its response is written in selector thread
+     */
+    private void executeAsync(Connection connection, AsyncRequest request) {
+        connection.waiting = true;
+        connection.deadline = Long.MAX_VALUE;
+        workerExecutor.execute(() -> {
+            ResponseWriter writer = request.execute();
+            completions.add(() -> complete(connection, writer));
+            selector.wakeup();
+        });
+    }
+
+    /*
+     * called in selector thread, continues with requests received while the async request was running
+     */
+    private void complete(Connection connection, ResponseWriter writer) {
+        SelectionKey key = connection.key;
+        if (!key.isValid()) {
+            return;
+        }
+        connection.waiting = false;
+        connection.deadline = System.currentTimeMillis() + IDLE_TIMEOUT;
+        writer.write(connection);
+        if (connection.mode == MODE_FRAMED && !processFrames(connection)) {
+            close(key);
+            return;
+        }
+        updateInterest(key, connection);
+    }
+
+    private interface AsyncRequest {
+        ResponseWriter execute();
+    }
+
+    private interface ResponseWriter {
+        void write(Connection connection);
+    }
 
-            clientSocket.shutdownInput();
-            String commandResult;
-            if ("STOP".equals(command.toString())) {
+    private static void respond(Connection connection, int correlationId, byte status, byte[] payload) {
+        ByteBuffer out = connection.ensureOut(SjlControlProtocol.HEADER_SIZE + payload.length);
+        out.putInt(SjlControlProtocol.HEADER_SIZE - 4 + payload.length);
+        out.putInt(correlationId);
+        out.put(status);
+        out.put(payload);
+    }
+
+    private static void respond(Connection connection, int correlationId, byte status, ByteBuffer source, int start, int end) {
+        ByteBuffer out = connection.ensureOut(SjlControlProtocol.HEADER_SIZE + end - start);
+        out.putInt(SjlControlProtocol.HEADER_SIZE - 4 + end - start);
+        out.putInt(correlationId);
+        out.put(status);
+        for (int n = start; n < end; n++) {
+            out.put(source.get(n));
+        }
+    }
+
+    /*
+     * request is in input buffer, response is put to output buffer
+     */
+    private void handleLegacyRequest(Connection connection) {
+        ByteBuffer in = connection.in;
+        ByteBuffer out = connection.out;
+        if (equals(in, STOP)) {
+            executeAsync(connection, () -> {
                 this.stopApplication();
-                result = true;
-                commandResult = "OK: stop done";
-            } else if ("RESTART".equals(command.toString())) {
+                return c -> {
+                    c.stopServer = true;
+                    c.out.put(STOP_RESPONSE);
+                };
+            });
+        } else if (equals(in, RESTART)) {
+            executeAsync(connection, () -> {
                 this.stopApplication();
-                result = true;
                 restartApp = true;
-                commandResult = "RESTART: restart done";
-            } else if (command.toString().startsWith("PING")) {
-                commandResult = "OK: " + command.substring("PING".length());
+                return c -> {
+                    c.stopServer = true;
+                    c.out.put(RESTART_RESPONSE);
+                };
+            });
+        } else if (equals(in, RELOAD)) {
+            if (configuration == null) {
+                connection.ensureOut(ERROR_PREFIX.length + RELOAD_DISABLED.length).put(ERROR_PREFIX).put(RELOAD_DISABLED);
             } else {
-                commandResult = "ERROR: unknown command";
+                executeAsync(connection, () -> {
+                    byte[] response;
+                    try {
+                        response = bytes("OK: " + reloadConfiguration());
+                    } catch (Throwable t) {
+                        response = bytes("ERROR: " + t);
+                    }
+                    byte[] legacyResponse = response;
+                    return c -> c.ensureOut(legacyResponse.length).put(legacyResponse);
+                });
             }
+        } else if (equals(in, METRICS)) {
+            if (metrics == null) {
+                connection.ensureOut(METRICS_DISABLED_RESPONSE.length).put(METRICS_DISABLED_RESPONSE);
+            } else {
+                metricsWriter.reset();
+                metrics.render(metricsWriter);
+                metricsWriter.writeTo(connection.ensureOut(metricsWriter.size()));
+            }
+        } else if (equals(in, HEALTH) || equals(in, READY)) {
+            if (healthMonitor == null) {
+                connection.ensureOut(ERROR_PREFIX.length + HEALTH_DISABLED.length).put(ERROR_PREFIX).put(HEALTH_DISABLED);
+            } else {
+                SjlHealthMonitor.Result result = equals(in, HEALTH) ? healthMonitor.getHealth() : healthMonitor.getReadiness();
+                byte[] message = result.getMessageBytes();
+                connection.ensureOut(ERROR_PREFIX.length + message.length).put(result.isOk() ? OK_PREFIX : ERROR_PREFIX).put(message);
+            }
+        } else if (startsWith(in, PING)) {
+            // response echoes the rest of the request after "OK: "
+            out.put(PING_RESPONSE);
+            for (int n = PING.length; n < in.limit(); n++) {
+                out.put(in.get(n));
+            }
+        } else {
+            out.put(UNKNOWN_COMMAND_RESPONSE);
+        }
+    }
 
-            out = clientSocket.getOutputStream();
-            out.write(commandResult.getBytes());
-            out.flush();
-            clientSocket.shutdownOutput();
-
-        } catch (IOException e) {
-            println(SjlUtils.prepareLogMessage("error processing control request", e));
-        } finally {
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    println(SjlUtils.prepareLogMessage("error closing socket", e));
+    /*
+     * handles all complete http requests from input buffer, request bodies are not supported
+     */
+    private void processHttpRequests(Connection connection) {
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (!connection.closeAfterWrite) {
+            int end = indexOf(in, HTTP_HEADERS_END);
+            if (end < 0) {
+                if (in.remaining() == in.capacity() || (connection.inputClosed && in.hasRemaining())) {
+                    connection.ensureOut(HTTP_BAD_REQUEST.length).put(HTTP_BAD_REQUEST);
+                    connection.closeAfterWrite = true;
                 }
+                break;
             }
+            int start = in.position();
+            end += HTTP_HEADERS_END.length;
+            boolean close = containsIgnoreCase(in, start, end, HTTP_CONNECTION_CLOSE) || containsIgnoreCase(in, start, end, HTTP_VERSION_1_0);
+            if (isHttpGet(in, start, HTTP_HEALTH_REQUEST) || isHttpGet(in, start, HTTP_READY_REQUEST)) {
+                if (healthMonitor == null) {
+                    putHttpHeaders(connection, HTTP_NOT_FOUND, close);
+                } else {
+                    SjlHealthMonitor.Result result = isHttpGet(in, start, HTTP_HEALTH_REQUEST) ? healthMonitor.getHealth() : healthMonitor.getReadiness();
+                    byte[] message = result.getMessageBytes();
+                    byte[] status = result.isOk() ? HTTP_PROBE_OK : HTTP_PROBE_FAILED;
+                    ByteBuffer out = connection.ensureOut(status.length + 20 + HTTP_CLOSE_HEADER.length + 2 * CRLF.length + message.length);
+                    out.put(status);
+                    putNumber(out, message.length);
+                    out.put(CRLF);
+                    if (close) {
+                        out.put(HTTP_CLOSE_HEADER);
+                    }
+                    out.put(CRLF);
+                    out.put(message);
+                }
+            } else if (isHttpGet(in, start, HTTP_METRICS_REQUEST)) {
+                if (metrics == null) {
+                    putHttpHeaders(connection, HTTP_NOT_FOUND, close);
+                } else {
+                    metricsWriter.reset();
+                    metrics.render(metricsWriter);
+                    ByteBuffer out = connection.ensureOut(HTTP_OK.length + 20 + HTTP_CLOSE_HEADER.length + 2 * CRLF.length + metricsWriter.size());
+                    out.put(HTTP_OK);
+                    putNumber(out, metricsWriter.size());
+                    out.put(CRLF);
+                    if (close) {
+                        out.put(HTTP_CLOSE_HEADER);
+                    }
+                    out.put(CRLF);
+                    metricsWriter.writeTo(out);
+                }
+            } else if (matches(in, start, HTTP_GET)) {
+                putHttpHeaders(connection, HTTP_NOT_FOUND, close);
+            } else {
+                putHttpHeaders(connection, HTTP_METHOD_NOT_ALLOWED, close);
+            }
+            connection.closeAfterWrite = close;
+            in.position(end);
+        }
+        in.compact();
+    }
+
+    private static void putHttpHeaders(Connection connection, byte[] headers, boolean close) {
+        ByteBuffer out = connection.ensureOut(headers.length + HTTP_CLOSE_HEADER.length + CRLF.length);
+        out.put(headers);
+        if (close) {
+            out.put(HTTP_CLOSE_HEADER);
         }
+        out.put(CRLF);
+    }
+
+    private static boolean isHttpGet(ByteBuffer in, int start, byte[] request) {
+        if (!matches(in, start, request)) {
+            return false;
+        }
+        byte next = in.get(start + request.length);
+        return next == ' ' || next == '?';
+    }
 
+    private static void putNumber(ByteBuffer out, int value) {
+        int divider = 1;
+        while (divider <= value / 10) {
+            divider *= 10;
+        }
+        for (; divider > 0; divider /= 10) {
+            out.put((byte) ('0' + value / divider % 10));
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] value) {
+        for (int n = buffer.position(); n <= buffer.limit() - value.length; n++) {
+            if (matches(buffer, n, value)) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int offset, byte[] value) {
+        if (buffer.limit() - offset < value.length) {
+            return false;
+        }
+        for (int n = 0; n < value.length; n++) {
+            if (buffer.get(offset + n) != value[n]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(ByteBuffer buffer, int start, int end, byte[] lowerCaseValue) {
+        for (int n = start; n <= end - lowerCaseValue.length; n++) {
+            int m = 0;
+            while (m < lowerCaseValue.length && Character.toLowerCase((char) buffer.get(n + m)) == lowerCaseValue[m]) {
+                m++;
+            }
+            if (m == lowerCaseValue.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long expireConnections(long now) {
+        long result = now + IDLE_TIMEOUT;
+        for (SelectionKey key : selector.keys()) {
+            Connection connection = (Connection) key.attachment();
+            if (connection == null) {
+                continue;
+            }
+            if (connection.deadline <= now) {
+                close(key);
+            } else if (connection.deadline < result) {
+                result = connection.deadline;
+            }
+        }
         return result;
     }
 
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            //noops
+        }
+    }
+
+    private static boolean equals(ByteBuffer buffer, byte[] value) {
+        return buffer.limit() == value.length && startsWith(buffer, value);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] value) {
+        if (buffer.limit() < value.length) {
+            return false;
+        }
+        for (int n = 0; n < value.length; n++) {
+            if (buffer.get(n) != value[n]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
     private void stopApplication() {
         if (!this.appRunning) {
             println("application not running");
@@ -250,7 +1211,7 @@ public final class SjlControlThread extends Thread {
     }
 
     private boolean isValidHost(InetAddress address) {
-        byte[] localAddr = this.serverSocket.getInetAddress().getAddress();
+        byte[] localAddr = this.serverChannel.socket().getInetAddress().getAddress();
         byte[] remoteAddr = address.getAddress();
         if (localAddr.length != remoteAddr.length) {
             return false;
@@ -265,7 +1226,39 @@ public final class SjlControlThread extends Thread {
         }
     }
 
+    private static final class Connection {
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+
+        ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+
+        long deadline;
+
+        int mode = MODE_UNKNOWN;
 
+        boolean inputClosed;
+
+        boolean closeAfterWrite;
+
+        boolean stopServer;
+
+        boolean waiting;
+
+        SelectionKey key;
+
+        Connection(long deadline) {
+            this.deadline = deadline;
+        }
+
+        ByteBuffer ensureOut(int size) {
+            if (out.remaining() < size) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + size));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            return out;
+        }
+    }
 
     private static void println(String text) {
         Logger.getLogger(SjlControlThread.class.getName()).info(text);
@@ -0,0 +1,510 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.control;
+
+import com.vga.sjl.boot.SjlShutdown;
+import com.vga.sjl.config.AppConfiguration;
+import com.vga.sjl.config.ConfigKey;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * Runs status, stop or metrics against several local instances concurrently.
+ * Tcp targets are served by asynchronous channels of one group, unix domain sockets are not supported by
+ * asynchronous channels, so they are served by blocking clients in a separate pool. Every target has its own deadline.
+ */
+public final class SjlFleetClient {
+
+    public static final String USAGE = "fleet status|stop|metrics [-json] [-timeout <millis>] <config file or control port>...";
+
+    private static final long DEFAULT_TIMEOUT = 5000;
+
+    // applies to targets given by port, their configuration is unknown
+    private static final Duration DEFAULT_SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final ConfigKey<Duration> SHUTDOWN_TIMEOUT = ConfigKey.ofDuration("sjl.shutdownTimeout", DEFAULT_SHUTDOWN_TIMEOUT);
+
+    private static final int THREADS = 4;
+
+    private static final ConfigKey<Integer> CONTROL_PORT = ConfigKey.ofInteger("sjl.controlPort", 0);
+
+    // -1 if not set: DEFAULT_TIMEOUT for status and metrics, shutdown timeout of the target for stop
+    private final long timeout;
+
+    private final InetAddress localhost;
+
+    private final AsynchronousChannelGroup group;
+
+    private final ExecutorService blockingPool;
+
+    private final ScheduledExecutorService timer;
+
+    private SjlFleetClient(long timeout) throws IOException {
+        this.timeout = timeout;
+        // resolved once for all targets
+        this.localhost = InetAddress.getByName("localhost");
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "sjl-fleet-thread");
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.group = AsynchronousChannelGroup.withFixedThreadPool(THREADS, threadFactory);
+        this.blockingPool = Executors.newCachedThreadPool(threadFactory);
+        this.timer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /*
+     * returns exit code: 0 if operation succeeded for all targets, 1 otherwise
+     */
+    public static int run(String[] args) throws Exception {
+        if (args.length == 0 || !("status".equals(args[0]) || "stop".equals(args[0]) || "metrics".equals(args[0]))) {
+            throw new IllegalArgumentException("usage: " + USAGE);
+        }
+        String operation = args[0];
+        boolean json = false;
+        long timeout = -1;
+        List<Target> targets = new ArrayList<>();
+        for (int n = 1; n < args.length; n++) {
+            if ("-json".equals(args[n])) {
+                json = true;
+            } else if ("-timeout".equals(args[n]) && n + 1 < args.length) {
+                timeout = Long.parseLong(args[++n]);
+            } else {
+                targets.add(Target.parse(args[n]));
+            }
+        }
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("usage: " + USAGE);
+        }
+        SjlFleetClient client = new SjlFleetClient(timeout);
+        List<Result> results;
+        try {
+            results = client.execute(operation, targets);
+        } finally {
+            client.close();
+        }
+        StringBuilder sb = new StringBuilder();
+        if (json) {
+            appendJson(sb, results);
+        } else {
+            appendTable(sb, results, "metrics".equals(operation));
+        }
+        System.out.print(sb);
+        for (Result result : results) {
+            if (!result.ok) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private List<Result> execute(String operation, List<Target> targets) {
+        byte[] commands;
+        switch (operation) {
+            case "status":
+                commands = new byte[]{SjlControlProtocol.COMMAND_PING, SjlControlProtocol.COMMAND_READY, SjlControlProtocol.COMMAND_HEALTH};
+                break;
+            case "stop":
+                commands = new byte[]{SjlControlProtocol.COMMAND_STOP};
+                break;
+            default:
+                commands = new byte[]{SjlControlProtocol.COMMAND_METRICS};
+        }
+        ByteBuffer request = createRequest(commands);
+        List<CompletableFuture<Result>> futures = new ArrayList<>();
+        for (Target target : targets) {
+            long start = System.nanoTime();
+            // stop is answered when the instance is stopped
+            long targetTimeout = timeout >= 0 ? timeout : "stop".equals(operation) ? target.stopTimeout : DEFAULT_TIMEOUT;
+            CompletableFuture<List<SjlControlClient.Response>> exchange = withDeadline(target.socketFile == null
+                    ? exchangeTcp(target.port, request.duplicate(), commands.length)
+                    : exchangeUnixSocket(target.socketFile, commands, targetTimeout), targetTimeout);
+            futures.add(exchange.handle((responses, error) -> toResult(operation, target, responses, error, (System.nanoTime() - start) / 1000000)));
+        }
+        List<Result> results = new ArrayList<>();
+        for (CompletableFuture<Result> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    private static ByteBuffer createRequest(byte[] commands) {
+        ByteBuffer request = ByteBuffer.allocate(SjlControlProtocol.MAGIC.length + commands.length * SjlControlProtocol.HEADER_SIZE);
+        request.put(SjlControlProtocol.MAGIC);
+        for (int n = 0; n < commands.length; n++) {
+            request.putInt(SjlControlProtocol.HEADER_SIZE - 4);
+            request.putInt(n + 1);
+            request.put(commands[n]);
+        }
+        request.flip();
+        return request;
+    }
+
+    private CompletableFuture<List<SjlControlClient.Response>> withDeadline(CompletableFuture<List<SjlControlClient.Response>> future, long timeout) {
+        ScheduledFuture<?> deadline = timer.schedule(() -> future.completeExceptionally(new TimeoutException("no response in " + timeout + " ms")), timeout, TimeUnit.MILLISECONDS);
+        future.whenComplete((responses, error) -> deadline.cancel(false));
+        return future;
+    }
+
+    private CompletableFuture<List<SjlControlClient.Response>> exchangeTcp(int port, ByteBuffer request, int expectedResponses) {
+        CompletableFuture<List<SjlControlClient.Response>> future = new CompletableFuture<>();
+        try {
+            AsynchronousSocketChannel channel = AsynchronousSocketChannel.open(group);
+            new TcpExchange(channel, request, expectedResponses, future).connect(new InetSocketAddress(localhost, port));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private CompletableFuture<List<SjlControlClient.Response>> exchangeUnixSocket(File socketFile, byte[] commands, long timeout) {
+        CompletableFuture<List<SjlControlClient.Response>> future = new CompletableFuture<>();
+        if (!socketFile.exists()) {
+            // socket file is deleted when the instance stops
+            future.completeExceptionally(new ConnectException("socket file " + socketFile + " does not exist"));
+            return future;
+        }
+        blockingPool.execute(() -> {
+            try (SjlControlClient client = new SjlControlClient(socketFile)) {
+                client.setTimeout((int) timeout);
+                for (byte command : commands) {
+                    client.send(command, new byte[0]);
+                }
+                List<SjlControlClient.Response> responses = new ArrayList<>();
+                for (int n = 0; n < commands.length && !future.isDone(); n++) {
+                    responses.add(client.receive());
+                }
+                future.complete(responses);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    private static Result toResult(String operation, Target target, List<SjlControlClient.Response> responses, Throwable error, long millis) {
+        Result result = new Result(target.name, millis);
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof ConnectException) {
+                result.state = SjlControlThread.getStatusName(SjlControlThread.STATUS_NOT_RUNNING);
+                // instance that is not running is already stopped
+                result.ok = "stop".equals(operation);
+            } else if (cause instanceof TimeoutException) {
+                result.state = "timeout";
+                result.details = cause.getMessage();
+            } else {
+                result.state = "error";
+                result.details = String.valueOf(cause);
+            }
+            return result;
+        }
+        switch (operation) {
+            case "status":
+                int status = SjlControlThread.toStatus(responses.get(0), responses.get(1), responses.get(2));
+                result.state = SjlControlThread.getStatusName(status);
+                result.details = SjlControlThread.getStatusDetails(status, responses.get(1), responses.get(2));
+                result.ok = status == SjlControlThread.STATUS_READY;
+                break;
+            case "stop":
+                result.ok = responses.get(0).isOk();
+                result.state = result.ok ? "stopped" : "error";
+                result.details = result.ok ? "" : responses.get(0).getText();
+                break;
+            default:
+                result.ok = responses.get(0).isOk();
+                result.state = result.ok ? "ok" : "error";
+                if (result.ok) {
+                    result.body = responses.get(0).getText();
+                    result.details = responses.get(0).payload.length + " bytes";
+                } else {
+                    result.details = responses.get(0).getText();
+                }
+        }
+        return result;
+    }
+
+    private void close() throws IOException {
+        group.shutdownNow();
+        blockingPool.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private static void appendTable(StringBuilder sb, List<Result> results, boolean withBodies) {
+        if (withBodies) {
+            for (Result result : results) {
+                if (result.body != null) {
+                    sb.append("# target ").append(result.target).append('\n').append(result.body);
+                }
+            }
+        }
+        int targetWidth = "TARGET".length();
+        int stateWidth = "STATE".length();
+        for (Result result : results) {
+            targetWidth = Math.max(targetWidth, result.target.length());
+            stateWidth = Math.max(stateWidth, result.state.length());
+        }
+        String format = "%-" + targetWidth + "s  %-" + stateWidth + "s  %8s  %s%n";
+        sb.append(String.format(Locale.ROOT, format, "TARGET", "STATE", "TIME", "DETAILS"));
+        for (Result result : results) {
+            sb.append(String.format(Locale.ROOT, format, result.target, result.state, result.millis + " ms", result.details));
+        }
+    }
+
+    private static void appendJson(StringBuilder sb, List<Result> results) {
+        sb.append("[\n");
+        for (int n = 0; n < results.size(); n++) {
+            Result result = results.get(n);
+            sb.append("  {\"target\": ");
+            appendJsonString(sb, result.target);
+            sb.append(", \"state\": ");
+            appendJsonString(sb, result.state);
+            sb.append(", \"ok\": ").append(result.ok);
+            sb.append(", \"millis\": ").append(result.millis);
+            sb.append(", \"details\": ");
+            appendJsonString(sb, result.details);
+            if (result.body != null) {
+                sb.append(", \"metrics\": ");
+                appendJsonString(sb, result.body);
+            }
+            sb.append(n < results.size() - 1 ? "},\n" : "}\n");
+        }
+        sb.append("]\n");
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int n = 0; n < value.length(); n++) {
+            char c = value.charAt(n);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    static final class Target {
+        final String name;
+
+        final int port;
+
+        final File socketFile;
+
+        final long stopTimeout;
+
+        private Target(String name, int port, File socketFile, long stopTimeout) {
+            this.name = name;
+            this.port = port;
+            this.socketFile = socketFile;
+            this.stopTimeout = stopTimeout;
+        }
+
+        /*
+         * value is a control port or a config file, relative temp directory of the config file is resolved
+         * against its distribution directory: the parent of config file or of its config folder
+         */
+        static Target parse(String value) throws IOException {
+            if (value.chars().allMatch(Character::isDigit)) {
+                return new Target("localhost:" + value, Integer.parseInt(value), null, SjlShutdown.getStopResponseTimeout(DEFAULT_SHUTDOWN_TIMEOUT.toMillis()));
+            }
+            File configFile = new File(value).getAbsoluteFile();
+            if (!configFile.isFile()) {
+                throw new IllegalArgumentException(String.format("Config file %s does not exist", configFile));
+            }
+            AppConfiguration config = value.endsWith(".properties") ? AppConfiguration.fromProperties(configFile) : AppConfiguration.fromYaml(configFile);
+            File distDirectory = configFile.getParentFile();
+            if ("config".equals(distDirectory.getName()) && distDirectory.getParentFile() != null) {
+                distDirectory = distDirectory.getParentFile();
+            }
+            long stopTimeout = SjlShutdown.getStopResponseTimeout(SHUTDOWN_TIMEOUT.get(config).toMillis());
+            if ("true".equals(config.computeValue("sjl.controlSocket", "false")) && SjlControlThread.isUnixSocketSupported()) {
+                File tempDirectory = new File(config.computeValue("sjl.tempDirectory", "temp"));
+                if (!tempDirectory.isAbsolute()) {
+                    tempDirectory = new File(distDirectory, tempDirectory.getPath());
+                }
+                return new Target(value, 0, new File(new File(tempDirectory, "control"), "control.sock"), stopTimeout);
+            }
+            int port = CONTROL_PORT.get(config);
+            if (port == 0) {
+                throw new IllegalArgumentException(String.format("neither controlPort nor controlSocket is defined in %s", value));
+            }
+            return new Target(value, port, null, stopTimeout);
+        }
+    }
+
+    private static final class Result {
+        final String target;
+
+        final long millis;
+
+        String state;
+
+        boolean ok;
+
+        String details = "";
+
+        String body;
+
+        Result(String target, long millis) {
+            this.target = target;
+            this.millis = millis;
+        }
+    }
+
+    /*
+     * sends pipelined request and reads the expected number of response frames
+     */
+    private static final class TcpExchange {
+        private final AsynchronousSocketChannel channel;
+
+        private final ByteBuffer request;
+
+        private final int expectedResponses;
+
+        private final CompletableFuture<List<SjlControlClient.Response>> future;
+
+        private final List<SjlControlClient.Response> responses = new ArrayList<>();
+
+        private ByteBuffer in = ByteBuffer.allocate(4096);
+
+        TcpExchange(AsynchronousSocketChannel channel, ByteBuffer request, int expectedResponses, CompletableFuture<List<SjlControlClient.Response>> future) {
+            this.channel = channel;
+            this.request = request;
+            this.expectedResponses = expectedResponses;
+            this.future = future;
+            // deadline completes the future, closing the channel fails pending operations
+            future.whenComplete((result, error) -> closeChannel());
+        }
+
+        void connect(InetSocketAddress address) {
+            channel.connect(address, null, handler(ignored -> write()));
+        }
+
+        private void write() {
+            channel.write(request, null, handler(count -> {
+                if (request.hasRemaining()) {
+                    write();
+                } else {
+                    read();
+                }
+            }));
+        }
+
+        private void read() {
+            channel.read(in, null, handler(count -> {
+                if (count < 0) {
+                    throw new EOFException("connection closed after " + responses.size() + " responses");
+                }
+                parse();
+                if (responses.size() == expectedResponses) {
+                    future.complete(responses);
+                } else {
+                    read();
+                }
+            }));
+        }
+
+        private void parse() throws IOException {
+            in.flip();
+            while (in.remaining() >= 4 && responses.size() < expectedResponses) {
+                int length = in.getInt(in.position());
+                if (length < SjlControlProtocol.HEADER_SIZE - 4 || length > SjlControlProtocol.MAX_RESPONSE_SIZE) {
+                    throw new IOException("wrong control response length " + length);
+                }
+                if (in.remaining() < length + 4) {
+                    break;
+                }
+                in.getInt();
+                int correlationId = in.getInt();
+                byte status = in.get();
+                byte[] payload = new byte[length - (SjlControlProtocol.HEADER_SIZE - 4)];
+                in.get(payload);
+                responses.add(new SjlControlClient.Response(correlationId, status, payload));
+            }
+            in.compact();
+            if (in.position() >= 4 && in.getInt(0) + 4 > in.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(in.getInt(0) + 4);
+                in.flip();
+                larger.put(in);
+                in = larger;
+            }
+        }
+
+        private void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //noops
+            }
+        }
+
+        private <T> CompletionHandler<T, Void> handler(ThrowingConsumer<T> next) {
+            return new CompletionHandler<T, Void>() {
+                @Override
+                public void completed(T result, Void attachment) {
+                    try {
+                        next.accept(result);
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable t, Void attachment) {
+                    future.completeExceptionally(t);
+                }
+            };
+        }
+    }
+
+    private interface ThrowingConsumer<T> {
+        void accept(T value) throws Exception;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.control;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/*
+ * Unix domain sockets are available since java 16, launcher is compiled for java 8 so they are accessed with reflection.
+ * Access to the socket is limited by permissions of its directory and file.
+ */
+final class SjlUnixDomainSockets {
+
+    private static final Method addressFactory;
+
+    private static final Method serverChannelFactory;
+
+    private static final ProtocolFamily unixFamily;
+
+    static {
+        Method address = null;
+        Method server = null;
+        ProtocolFamily family = null;
+        try {
+            address = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+            server = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+            family = StandardProtocolFamily.valueOf("UNIX");
+        } catch (Exception e) {
+            address = null;
+        }
+        addressFactory = address;
+        serverChannelFactory = server;
+        unixFamily = family;
+    }
+
+    private SjlUnixDomainSockets() {
+    }
+
+    static boolean isSupported() {
+        return addressFactory != null;
+    }
+
+    static ServerSocketChannel bind(File socketFile, int backlog) throws IOException {
+        File directory = socketFile.getAbsoluteFile().getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("unable to create dir " + directory.getAbsolutePath());
+        }
+        setPermissions(directory.toPath(), "rwx------");
+        // socket file of previous instance that was not stopped properly, the instance lock is already acquired
+        Files.deleteIfExists(socketFile.toPath());
+        ServerSocketChannel channel = (ServerSocketChannel) invoke(serverChannelFactory, null, unixFamily);
+        try {
+            channel.bind(address(socketFile), backlog);
+            setPermissions(socketFile.toPath(), "rw-------");
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    static SocketChannel connect(File socketFile) throws IOException {
+        return SocketChannel.open(address(socketFile));
+    }
+
+    private static SocketAddress address(File socketFile) throws IOException {
+        if (!isSupported()) {
+            throw new IOException("unix domain sockets require java 16 or newer");
+        }
+        return (SocketAddress) invoke(addressFactory, null, socketFile.toPath());
+    }
+
+    private static Object invoke(Method method, Object target, Object argument) throws IOException {
+        try {
+            return method.invoke(target, argument);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void setPermissions(Path path, String permissions) throws IOException {
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+        } catch (UnsupportedOperationException e) {
+            //noops
+        }
+    }
+}
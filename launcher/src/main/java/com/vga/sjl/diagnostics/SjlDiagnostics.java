@@ -0,0 +1,198 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.diagnostics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Pattern;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * Thread dumps, class histograms and flight recordings of the running jvm, produced with DiagnosticCommand MBean.
+ * Results are written to files in the diagnostics directory, callers get the file path instead of the content.
+ */
+public final class SjlDiagnostics {
+
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+
+    private static final String RECORDING_NAME = "sjl";
+
+    private static final DateTimeFormatter FILE_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    // settings are passed to jfrStart as a single argument, so separators are not allowed
+    private static final Pattern SETTINGS = Pattern.compile("[A-Za-z0-9_./\\\\:-]+");
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final File directory;
+
+    public SjlDiagnostics(File directory) {
+        this.directory = directory;
+    }
+
+    public File dumpThreads() throws Exception {
+        File file = createFile("threads", "txt");
+        if (isDiagnosticCommandAvailable()) {
+            write(file, executeCommand("threadPrint", "-l"));
+        } else {
+            write(file, formatThreads(ManagementFactory.getThreadMXBean().dumpAllThreads(true, true)));
+        }
+        return file;
+    }
+
+    /*
+     * histogram of live objects forces full gc, all objects histogram does not
+     */
+    public File dumpClassHistogram(boolean allObjects) throws Exception {
+        File file = createFile("histogram", "txt");
+        write(file, allObjects ? executeCommand("gcClassHistogram", "-all") : executeCommand("gcClassHistogram"));
+        return file;
+    }
+
+    /*
+     * settings is a name of jfc profile (default, profile) or path to a jfc file
+     */
+    public String startRecording(String settings) throws Exception {
+        if (settings == null || settings.isEmpty()) {
+            settings = "default";
+        }
+        if (!SETTINGS.matcher(settings).matches()) {
+            throw new IllegalArgumentException("invalid recording settings " + settings);
+        }
+        return executeCommand("jfrStart", "name=" + RECORDING_NAME, "settings=" + settings).trim();
+    }
+
+    /*
+     * writes data of running recording to a file, recording continues
+     */
+    public File dumpRecording() throws Exception {
+        File file = createFile("recording", "jfr");
+        executeCommand("jfrDump", "name=" + RECORDING_NAME, "filename=" + file.getAbsolutePath());
+        return file;
+    }
+
+    public File stopRecording() throws Exception {
+        File file = createFile("recording", "jfr");
+        executeCommand("jfrStop", "name=" + RECORDING_NAME, "filename=" + file.getAbsolutePath());
+        return file;
+    }
+
+    private File createFile(String prefix, String extension) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("unable to create dir " + directory.getAbsolutePath());
+        }
+        return new File(directory, prefix + "-" + LocalDateTime.now().format(FILE_SUFFIX) + "." + extension).getAbsoluteFile();
+    }
+
+    private static boolean isDiagnosticCommandAvailable() throws Exception {
+        return ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(DIAGNOSTIC_COMMAND));
+    }
+
+    private static String executeCommand(String command, String... arguments) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(DIAGNOSTIC_COMMAND);
+        if (!server.isRegistered(name)) {
+            throw new UnsupportedOperationException("diagnostic commands are not supported by this jvm");
+        }
+        Object result = server.invoke(name, command, new Object[]{arguments}, new String[]{String[].class.getName()});
+        return result == null ? "" : result.toString();
+    }
+
+    /*
+     * encodes text chunk by chunk, so megabytes of output are not copied to a single byte array
+     */
+    private static void write(File file, CharSequence text) throws IOException {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        CharBuffer chars = CharBuffer.wrap(text);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+            encoder.flush(buffer);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /*
+     * fallback for jvms without DiagnosticCommand MBean, ThreadInfo.toString truncates stack traces
+     */
+    private static CharSequence formatThreads(ThreadInfo[] threads) {
+        StringBuilder sb = new StringBuilder();
+        for (ThreadInfo thread : threads) {
+            sb.append('"').append(thread.getThreadName()).append("\" #").append(thread.getThreadId()).append(' ').append(thread.getThreadState());
+            if (thread.getLockName() != null) {
+                sb.append(" on ").append(thread.getLockName());
+            }
+            if (thread.getLockOwnerName() != null) {
+                sb.append(" owned by \"").append(thread.getLockOwnerName()).append("\" #").append(thread.getLockOwnerId());
+            }
+            sb.append('\n');
+            StackTraceElement[] stackTrace = thread.getStackTrace();
+            for (int n = 0; n < stackTrace.length; n++) {
+                sb.append("\tat ").append(stackTrace[n]).append('\n');
+                for (MonitorInfo monitor : thread.getLockedMonitors()) {
+                    if (monitor.getLockedStackDepth() == n) {
+                        sb.append("\t- locked ").append(monitor).append('\n');
+                    }
+                }
+            }
+            LockInfo[] synchronizers = thread.getLockedSynchronizers();
+            if (synchronizers.length > 0) {
+                sb.append("\n\tLocked ownable synchronizers:\n");
+                for (LockInfo synchronizer : synchronizers) {
+                    sb.append("\t- ").append(synchronizer).append('\n');
+                }
+            }
+            sb.append('\n');
+        }
+        return sb;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.health;
+
+import com.vga.sjl.Application;
+import com.vga.sjl.HealthAware;
+import com.vga.sjl.utils.SjlUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/*
+ * Runs readiness and health checks of HealthAware application every interval in a separate thread.
+ * Probes get the cached result of the last check, a check that does not complete in timeout is reported as failed
+ * and next checks are skipped until it completes.
+ */
+public final class SjlHealthMonitor {
+
+    private static final Result STARTING = new Result(false, "starting");
+
+    // a starting application is alive, only its readiness fails
+    private static final Result ALIVE_STARTING = new Result(true, "starting");
+
+    private static final Result READY = new Result(true, "ready");
+
+    private static final Result HEALTHY = new Result(true, "healthy");
+
+    private static final Result NOT_READY = new Result(false, "not ready");
+
+    private static final Result UNHEALTHY = new Result(false, "unhealthy");
+
+    private static final Result STOPPING = new Result(false, "stopping");
+
+    private static final Result NOT_RUNNING = new Result(false, "application is not running");
+
+    private final Supplier<Application> application;
+
+    private final long timeout;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService checker;
+
+    private volatile boolean started;
+
+    private volatile Result readiness = STARTING;
+
+    private volatile Result health = ALIVE_STARTING;
+
+    private Future<?> runningCheck;
+
+    public SjlHealthMonitor(Supplier<Application> application, long interval, long timeout) {
+        this.application = application;
+        this.timeout = timeout;
+        ClassLoader launcherLoader = SjlHealthMonitor.class.getClassLoader();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> createThread(r, "sjl-health-monitor", launcherLoader));
+        this.checker = Executors.newSingleThreadExecutor(r -> createThread(r, "sjl-health-check", launcherLoader));
+        this.scheduler.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private static Thread createThread(Runnable runnable, String name, ClassLoader contextClassLoader) {
+        // threads are created by the launcher, so they do not keep application classloader on reload
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.setContextClassLoader(contextClassLoader);
+        return thread;
+    }
+
+    /*
+     * application is considered starting until this method is called, results are refreshed immediately
+     * while starting readiness fails and health is ok
+     */
+    public void setStarted(boolean started) {
+        this.started = started;
+        if (!started) {
+            readiness = STARTING;
+            health = ALIVE_STARTING;
+            return;
+        }
+        scheduler.execute(this::check);
+    }
+
+    /*
+     * readiness is reported as failed until setStarted(true), checks are not called,
+     * health keeps the last result so liveness probes do not fail while requests are drained
+     */
+    public void setStopping() {
+        started = false;
+        readiness = STOPPING;
+    }
+
+    public Result getReadiness() {
+        return readiness;
+    }
+
+    public Result getHealth() {
+        return health;
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+        checker.shutdownNow();
+    }
+
+    private void check() {
+        if (!started) {
+            return;
+        }
+        if (runningCheck != null && !runningCheck.isDone()) {
+            Result failure = new Result(false, "previous check is still running");
+            readiness = failure;
+            health = failure;
+            return;
+        }
+        runningCheck = checker.submit(this::runChecks);
+        try {
+            runningCheck.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Result failure = new Result(false, "check timed out after " + timeout + " ms");
+            readiness = failure;
+            health = failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Logger.getLogger(SjlHealthMonitor.class.getName()).warning(SjlUtils.prepareLogMessage("health check failed", e.getCause()));
+        }
+    }
+
+    private void runChecks() {
+        Application app = application.get();
+        if (app == null) {
+            readiness = NOT_RUNNING;
+            health = NOT_RUNNING;
+            return;
+        }
+        if (!(app instanceof HealthAware)) {
+            readiness = READY;
+            health = HEALTHY;
+            return;
+        }
+        HealthAware healthAware = (HealthAware) app;
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(app.getClass().getClassLoader());
+        try {
+            Result ready;
+            try {
+                ready = healthAware.isReady() ? READY : NOT_READY;
+            } catch (Throwable t) {
+                ready = new Result(false, "not ready: " + t);
+            }
+            Result healthy;
+            try {
+                healthy = healthAware.isHealthy() ? HEALTHY : UNHEALTHY;
+            } catch (Throwable t) {
+                healthy = new Result(false, "unhealthy: " + t);
+            }
+            // a check completing after setStopping() must not report the application ready again
+            if (started) {
+                readiness = ready;
+            }
+            health = healthy;
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    /*
+     * immutable check result, message is kept encoded so probes do not allocate
+     */
+    public static final class Result {
+
+        private final boolean ok;
+
+        private final String message;
+
+        private final byte[] messageBytes;
+
+        Result(boolean ok, String message) {
+            this.ok = ok;
+            this.message = message;
+            this.messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public boolean isOk() {
+            return ok;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public byte[] getMessageBytes() {
+            return messageBytes;
+        }
+    }
+}
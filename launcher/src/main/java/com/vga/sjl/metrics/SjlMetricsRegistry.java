@@ -0,0 +1,197 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.metrics;
+
+import com.vga.sjl.boot.SjlBootReport;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * renders jvm metrics from MXBeans, boot phase timings and application counters in prometheus text format
+ */
+public final class SjlMetricsRegistry {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final SjlBootReport bootReport;
+
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private final ClassLoadingMXBean classLoadingBean = ManagementFactory.getClassLoadingMXBean();
+
+    private final RuntimeMXBean runtimeBean = ManagementFactory.getRuntimeMXBean();
+
+    private final List<GarbageCollectorMXBean> gcBeans = new ArrayList<>(ManagementFactory.getGarbageCollectorMXBeans());
+
+    private final ConcurrentHashMap<String, Counter> countersByName = new ConcurrentHashMap<>();
+
+    private final List<Counter> counters = new CopyOnWriteArrayList<>();
+
+    // boot phases do not change when all of them are closed, so they are rendered once
+    private volatile byte[] bootPhases;
+
+    public SjlMetricsRegistry(SjlBootReport bootReport) {
+        this.bootReport = bootReport;
+    }
+
+    /*
+     * returns registered counter with the same name or registers a new one
+     */
+    public Counter counter(String name, String help) {
+        Counter counter = countersByName.get(name);
+        if (counter != null) {
+            return counter;
+        }
+        synchronized (this) {
+            counter = countersByName.get(name);
+            if (counter == null) {
+                counter = new Counter(name, help);
+                counters.add(counter);
+                countersByName.put(name, counter);
+            }
+            return counter;
+        }
+    }
+
+    public void render(SjlMetricsWriter writer) {
+        MemoryUsage heap = memoryBean.getHeapMemoryUsage();
+        MemoryUsage nonHeap = memoryBean.getNonHeapMemoryUsage();
+        header(writer, "jvm_memory_bytes_used", "Used bytes of a given JVM memory area.", "gauge");
+        memory(writer, "jvm_memory_bytes_used", "heap", heap.getUsed());
+        memory(writer, "jvm_memory_bytes_used", "nonheap", nonHeap.getUsed());
+        header(writer, "jvm_memory_bytes_committed", "Committed bytes of a given JVM memory area.", "gauge");
+        memory(writer, "jvm_memory_bytes_committed", "heap", heap.getCommitted());
+        memory(writer, "jvm_memory_bytes_committed", "nonheap", nonHeap.getCommitted());
+        header(writer, "jvm_memory_bytes_max", "Max bytes of a given JVM memory area, -1 if undefined.", "gauge");
+        memory(writer, "jvm_memory_bytes_max", "heap", heap.getMax());
+        memory(writer, "jvm_memory_bytes_max", "nonheap", nonHeap.getMax());
+
+        header(writer, "jvm_gc_collection_count_total", "Number of collections of a given JVM garbage collector.", "counter");
+        for (int n = 0; n < gcBeans.size(); n++) {
+            GarbageCollectorMXBean bean = gcBeans.get(n);
+            writer.append("jvm_gc_collection_count_total{gc=\"").appendLabelValue(bean.getName()).append("\"} ").append(Math.max(0, bean.getCollectionCount())).append('\n');
+        }
+        header(writer, "jvm_gc_collection_seconds_total", "Accumulated pause time of a given JVM garbage collector.", "counter");
+        for (int n = 0; n < gcBeans.size(); n++) {
+            GarbageCollectorMXBean bean = gcBeans.get(n);
+            writer.append("jvm_gc_collection_seconds_total{gc=\"").appendLabelValue(bean.getName()).append("\"} ").appendSeconds(Math.max(0, bean.getCollectionTime()) * 1000000).append('\n');
+        }
+
+        gauge(writer, "jvm_threads_current", "Current thread count of the JVM.", threadBean.getThreadCount());
+        gauge(writer, "jvm_threads_daemon", "Daemon thread count of the JVM.", threadBean.getDaemonThreadCount());
+        gauge(writer, "jvm_threads_peak", "Peak thread count of the JVM.", threadBean.getPeakThreadCount());
+        header(writer, "jvm_threads_started_total", "Started thread count of the JVM.", "counter");
+        writer.append("jvm_threads_started_total ").append(threadBean.getTotalStartedThreadCount()).append('\n');
+
+        gauge(writer, "jvm_classes_loaded", "Number of classes that are currently loaded in the JVM.", classLoadingBean.getLoadedClassCount());
+        header(writer, "jvm_classes_loaded_total", "Number of classes that have been loaded since the JVM has started.", "counter");
+        writer.append("jvm_classes_loaded_total ").append(classLoadingBean.getTotalLoadedClassCount()).append('\n');
+        header(writer, "jvm_classes_unloaded_total", "Number of classes that have been unloaded since the JVM has started.", "counter");
+        writer.append("jvm_classes_unloaded_total ").append(classLoadingBean.getUnloadedClassCount()).append('\n');
+
+        header(writer, "process_uptime_seconds", "Uptime of the JVM.", "gauge");
+        writer.append("process_uptime_seconds ").appendSeconds(runtimeBean.getUptime() * 1000000).append('\n');
+
+        if (bootReport != null) {
+            renderBootPhases(writer);
+        }
+
+        for (int n = 0; n < counters.size(); n++) {
+            Counter counter = counters.get(n);
+            header(writer, counter.getName(), counter.getHelp(), "counter");
+            writer.append(counter.getName()).append(' ').append(counter.get()).append('\n');
+        }
+    }
+
+    private void renderBootPhases(SjlMetricsWriter writer) {
+        byte[] cached = bootPhases;
+        if (cached != null) {
+            writer.append(cached);
+            return;
+        }
+        SjlMetricsWriter phasesWriter = new SjlMetricsWriter();
+        header(phasesWriter, "sjl_boot_phase_seconds", "Duration of a given launcher boot phase, nested phases are separated by slash.", "gauge");
+        boolean completed = renderPhases(phasesWriter, bootReport.getPhases(), "");
+        if (completed) {
+            bootPhases = phasesWriter.toByteArray();
+        }
+        writer.append(phasesWriter.toByteArray());
+    }
+
+    /*
+     * returns false if some phase is not closed yet
+     */
+    private static boolean renderPhases(SjlMetricsWriter writer, List<SjlBootReport.Phase> phases, String prefix) {
+        boolean completed = true;
+        for (SjlBootReport.Phase phase : phases) {
+            String name = prefix + phase.getName();
+            if (phase.getDurationNanos() < 0) {
+                completed = false;
+            } else {
+                writer.append("sjl_boot_phase_seconds{phase=\"").appendLabelValue(name).append("\"} ").appendSeconds(phase.getDurationNanos()).append('\n');
+            }
+            completed &= renderPhases(writer, phase.getChildren(), name + "/");
+        }
+        return completed;
+    }
+
+    private static void header(SjlMetricsWriter writer, String name, String help, String type) {
+        if (help != null) {
+            writer.append("# HELP ").append(name).append(' ');
+            for (int n = 0; n < help.length(); n++) {
+                char c = help.charAt(n);
+                if (c == '\\') {
+                    writer.append("\\\\");
+                } else if (c == '\n') {
+                    writer.append("\\n");
+                } else if (c >= 0x80) {
+                    writer.append(String.valueOf(c));
+                } else {
+                    writer.append(c);
+                }
+            }
+            writer.append('\n');
+        }
+        writer.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(SjlMetricsWriter writer, String name, String help, long value) {
+        header(writer, name, help, "gauge");
+        writer.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void memory(SjlMetricsWriter writer, String name, String area, long value) {
+        writer.append(name).append("{area=\"").append(area).append("\"} ").append(value).append('\n');
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.metrics;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * growable ascii buffer for metrics text, it is reused between scrapes so rendering does not allocate
+ */
+public final class SjlMetricsWriter {
+
+    private byte[] data = new byte[8192];
+
+    private int size;
+
+    public void reset() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(data, 0, size);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public SjlMetricsWriter append(char c) {
+        ensure(1);
+        data[size++] = (byte) c;
+        return this;
+    }
+
+    public SjlMetricsWriter append(String value) {
+        for (int n = 0; n < value.length(); n++) {
+            if (value.charAt(n) >= 0x80) {
+                return append(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        ensure(value.length());
+        for (int n = 0; n < value.length(); n++) {
+            data[size++] = (byte) value.charAt(n);
+        }
+        return this;
+    }
+
+    public SjlMetricsWriter append(byte[] value) {
+        ensure(value.length);
+        System.arraycopy(value, 0, data, size, value.length);
+        size += value.length;
+        return this;
+    }
+
+    public SjlMetricsWriter append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+        ensure(20);
+        if (value < 0) {
+            data[size++] = '-';
+            value = -value;
+        }
+        int start = size;
+        do {
+            data[size++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int left = start, right = size - 1; left < right; left++, right--) {
+            byte b = data[left];
+            data[left] = data[right];
+            data[right] = b;
+        }
+        return this;
+    }
+
+    /*
+     * writes nanoseconds as seconds with microsecond precision
+     */
+    public SjlMetricsWriter appendSeconds(long nanos) {
+        long micros = nanos / 1000;
+        if (micros < 0) {
+            append('-');
+            micros = -micros;
+        }
+        append(micros / 1000000).append('.');
+        long fraction = micros % 1000000;
+        for (long divider = 100000; divider > 0; divider /= 10) {
+            append((char) ('0' + fraction / divider % 10));
+        }
+        return this;
+    }
+
+    /*
+     * writes label value escaping backslash, double quote and line feed
+     */
+    public SjlMetricsWriter appendLabelValue(String value) {
+        for (int n = 0; n < value.length(); n++) {
+            char c = value.charAt(n);
+            if (c == '\\' || c == '"') {
+                append('\\').append(c);
+            } else if (c == '\n') {
+                append('\\').append('n');
+            } else if (c >= 0x80) {
+                append(String.valueOf(c));
+            } else {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    private void ensure(int length) {
+        if (size + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+        }
+    }
+}
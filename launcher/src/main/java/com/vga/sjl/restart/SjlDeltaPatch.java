@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.restart;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * Binary patch created by the delta task of the dist gradle plugin.
+ * Gzipped stream: magic, version, size and SHA-256 of the result, then commands
+ * COPY(offset, length) from the old file and DATA(length, bytes), terminated by END.
+ */
+public final class SjlDeltaPatch {
+
+    private static final int MAGIC = 0x534A4C44;
+
+    private static final int VERSION = 1;
+
+    private static final int COMMAND_END = 0;
+
+    private static final int COMMAND_COPY = 1;
+
+    private static final int COMMAND_DATA = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /*
+     * streams patch against old file into output, output is synced and verified by size and hash
+     */
+    public static void apply(File oldFile, File patchFile, File outputFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(patchFile.toPath()), BUFFER_SIZE)));
+             FileChannel old = FileChannel.open(oldFile.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(patchFile.getAbsolutePath() + " is not a supported patch");
+            }
+            long size = in.readLong();
+            byte[] hash = new byte[32];
+            in.readFully(hash);
+            long written = 0;
+            while (true) {
+                int command = in.readByte();
+                if (command == COMMAND_END) {
+                    break;
+                }
+                if (command == COMMAND_COPY) {
+                    long position = in.readLong();
+                    int length = in.readInt();
+                    while (length > 0) {
+                        byteBuffer.clear();
+                        byteBuffer.limit(Math.min(length, BUFFER_SIZE));
+                        while (byteBuffer.hasRemaining()) {
+                            if (old.read(byteBuffer, position + byteBuffer.position()) < 0) {
+                                throw new IOException("patch " + patchFile.getAbsolutePath() + " does not match " + oldFile.getAbsolutePath());
+                            }
+                        }
+                        int count = byteBuffer.position();
+                        write(out, byteBuffer, digest, buffer, count);
+                        position += count;
+                        length -= count;
+                        written += count;
+                    }
+                } else if (command == COMMAND_DATA) {
+                    int length = in.readInt();
+                    while (length > 0) {
+                        int count = Math.min(length, BUFFER_SIZE);
+                        in.readFully(buffer, 0, count);
+                        write(out, byteBuffer, digest, buffer, count);
+                        length -= count;
+                        written += count;
+                    }
+                } else {
+                    throw new IOException("unknown patch command " + command);
+                }
+            }
+            if (written != size || !Arrays.equals(hash, digest.digest())) {
+                throw new IOException("result of patch " + patchFile.getAbsolutePath() + " does not match expected hash");
+            }
+            out.force(true);
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer byteBuffer, MessageDigest digest, byte[] buffer, int count) throws IOException {
+        digest.update(buffer, 0, count);
+        byteBuffer.clear();
+        byteBuffer.limit(count);
+        while (byteBuffer.hasRemaining()) {
+            out.write(byteBuffer);
+        }
+    }
+}
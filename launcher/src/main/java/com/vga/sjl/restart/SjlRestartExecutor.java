@@ -0,0 +1,711 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.restart;
+
+import com.vga.sjl.external.org.snakeyaml.engine.v2.api.SjlExtDump;
+import com.vga.sjl.external.org.snakeyaml.engine.v2.api.SjlExtDumpSettings;
+import com.vga.sjl.external.org.snakeyaml.engine.v2.api.SjlExtLoad;
+import com.vga.sjl.external.org.snakeyaml.engine.v2.api.SjlExtLoadSettings;
+import com.vga.sjl.external.org.snakeyaml.engine.v2.api.SjlExtYamlOutputStreamWriter;
+import com.vga.sjl.external.org.snakeyaml.engine.v2.representer.SjlExtStandardRepresenter;
+import com.vga.sjl.utils.SjlUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/*
+ * Applies restart operations with a write-ahead journal in temp directory.
+ * Replaced and deleted files are renamed to backups instead of being removed, so until the journal is committed
+ * every step can be rolled back by inspecting the file system. A step is marked as started in the journal once its
+ * preconditions hold and before it touches any file, only started steps are rolled back. Steps of a wave that do not
+ * depend on earlier steps of the wave are checked and marked together with one sync before the wave starts.
+ * An interrupted run is rolled back on the next boot and pending operations are applied again.
+ * Operations between sleep operations form a wave, operations of a wave that touch different paths run in parallel,
+ * directories are synced once per wave.
+ */
+public final class SjlRestartExecutor {
+
+    private static final String JOURNAL_HEADER = "SJL-RESTART-JOURNAL 1";
+
+    private static final String COMMITTED = "COMMITTED";
+
+    private static final String STARTED = "STARTED";
+
+    private static final String BACKUP_SUFFIX = ".sjl-backup-";
+
+    private static final String PATCHED_SUFFIX = ".sjl-patched-";
+
+    private static final int MAX_PARALLELISM = 8;
+
+    private final File operationsFile;
+
+    private final File journalFile;
+
+    // open while the journal exists, STARTED and COMMITTED records are appended to it
+    private FileChannel journal;
+
+    public SjlRestartExecutor(File tempDirectory) {
+        this.operationsFile = new File(tempDirectory, "restart.dat");
+        this.journalFile = new File(tempDirectory, "restart.journal");
+    }
+
+    public File getOperationsFile() {
+        return operationsFile;
+    }
+
+    /*
+     * stores operations to be applied on the next boot
+     */
+    public void save(List<RestartOperation> operations) throws IOException {
+        List<Map<String, String>> nodes = new ArrayList<>();
+        for (RestartOperation op : operations) {
+            Map<String, String> map = new HashMap<>();
+            if (op instanceof DeleteOperation) {
+                map.put("operation", "delete");
+                map.put("file", ((DeleteOperation) op).file.getAbsolutePath());
+            } else if (op instanceof MoveOperation) {
+                MoveOperation mop = (MoveOperation) op;
+                map.put("operation", "move");
+                map.put("from", mop.from.getAbsolutePath());
+                map.put("to", mop.to.getAbsolutePath());
+            } else if (op instanceof ApplyPatchOperation) {
+                ApplyPatchOperation pop = (ApplyPatchOperation) op;
+                map.put("operation", "patch");
+                map.put("file", pop.file.getAbsolutePath());
+                map.put("patch", pop.patch.getAbsolutePath());
+            } else if (op instanceof SleepOperation) {
+                map.put("operation", "sleep");
+                map.put("duration", String.valueOf(((SleepOperation) op).duration));
+            } else {
+                throw new IllegalArgumentException("unsupported restart operation " + op.getClass().getName());
+            }
+            nodes.add(map);
+        }
+        SjlExtStandardRepresenter representer = new SjlExtStandardRepresenter(SjlExtDumpSettings.builder().build());
+        Path tmp = new File(operationsFile.getPath() + ".tmp").toPath();
+        try (OutputStream os = Files.newOutputStream(tmp)) {
+            SjlExtYamlOutputStreamWriter writer = new SjlExtYamlOutputStreamWriter(os, StandardCharsets.UTF_8) {
+                @Override
+                public void processIOException(IOException e) {
+                    throw new RuntimeException(e);
+                }
+            };
+            new SjlExtDump(SjlExtDumpSettings.builder().build()).dumpNode(representer.represent(nodes), writer);
+        }
+        SjlUtils.fsync(tmp);
+        SjlUtils.atomicMove(tmp, operationsFile.toPath());
+        SjlUtils.fsyncDirectory(operationsFile.getAbsoluteFile().getParentFile().toPath());
+    }
+
+    public static List<RestartOperation> load(File file) throws IOException {
+        Object data;
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            data = new SjlExtLoad(SjlExtLoadSettings.builder().build()).loadFromInputStream(is);
+        }
+        List<RestartOperation> result = new ArrayList<>();
+        if (data == null) {
+            return result;
+        }
+        for (Object item : (List<?>) data) {
+            Map<?, ?> map = (Map<?, ?>) item;
+            String operation = (String) map.get("operation");
+            if ("delete".equals(operation)) {
+                result.add(new DeleteOperation(new File((String) map.get("file"))));
+            } else if ("move".equals(operation)) {
+                result.add(new MoveOperation(new File((String) map.get("from")), new File((String) map.get("to"))));
+            } else if ("patch".equals(operation)) {
+                result.add(new ApplyPatchOperation(new File((String) map.get("file")), new File((String) map.get("patch"))));
+            } else if ("sleep".equals(operation)) {
+                result.add(new SleepOperation(Long.parseLong(String.valueOf(map.get("duration")))));
+            } else {
+                throw new IOException("unsupported restart operation " + operation);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * called on boot: completes or rolls back interrupted run and applies operations stored by previous instance,
+     * operations that could not be applied are rolled back and kept in restart.dat.failed
+     */
+    public void executePending() throws IOException {
+        Logger logger = Logger.getLogger(SjlRestartExecutor.class.getName());
+        recover();
+        if (!operationsFile.exists()) {
+            return;
+        }
+        try {
+            List<RestartOperation> operations = load(operationsFile);
+            long start = System.nanoTime();
+            execute(operations, true);
+            logger.info(String.format("%s restart operations are applied in %s ms", operations.size(), (System.nanoTime() - start) / 1000000));
+        } catch (Exception e) {
+            logger.severe(SjlUtils.prepareLogMessage("unable to apply restart operations, changes are rolled back", e));
+            SjlUtils.atomicMove(operationsFile.toPath(), new File(operationsFile.getPath() + ".failed").toPath());
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /*
+     * applies operations immediately, all changes are rolled back if any operation fails
+     */
+    public void execute(List<RestartOperation> operations) throws IOException, InterruptedException {
+        recover();
+        execute(operations, false);
+    }
+
+    /*
+     * applies operations and leaves the journal open: changes are kept by commit and undone by rollback,
+     * if the process dies in between they are rolled back on the next boot
+     */
+    public void apply(List<RestartOperation> operations) throws IOException, InterruptedException {
+        recover();
+        applySteps(plan(operations));
+    }
+
+    /*
+     * makes changes of the last apply permanent, does nothing if there is no open journal
+     */
+    public void commit() throws IOException {
+        if (journalFile.exists()) {
+            commitJournal();
+            recover(false);
+        }
+    }
+
+    /*
+     * undoes changes of the last apply, does nothing if there is no open journal
+     */
+    public void rollback() throws IOException {
+        recover(false);
+    }
+
+    private void execute(List<RestartOperation> operations, boolean removeOperationsFile) throws IOException, InterruptedException {
+        List<Step> steps = plan(operations);
+        applySteps(steps);
+        commitJournal();
+        if (removeOperationsFile) {
+            Files.deleteIfExists(operationsFile.toPath());
+            SjlUtils.fsyncDirectory(operationsFile.getAbsoluteFile().getParentFile().toPath());
+        }
+        cleanup(steps);
+    }
+
+    private void applySteps(List<Step> steps) throws IOException, InterruptedException {
+        writeJournal(steps);
+        try {
+            List<Step> wave = new ArrayList<>();
+            for (Step step : steps) {
+                if (step.type == StepType.SLEEP) {
+                    applyWave(wave);
+                    wave.clear();
+                    Thread.sleep(step.duration);
+                } else {
+                    wave.add(step);
+                }
+            }
+            applyWave(wave);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            List<Step> started = new ArrayList<>();
+            for (Step step : steps) {
+                if (step.started) {
+                    started.add(step);
+                }
+            }
+            rollback(started);
+            closeJournal();
+            Files.deleteIfExists(journalFile.toPath());
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        recover(true);
+    }
+
+    private void recover(boolean interrupted) throws IOException {
+        closeJournal();
+        if (!journalFile.exists()) {
+            return;
+        }
+        Logger logger = Logger.getLogger(SjlRestartExecutor.class.getName());
+        List<String> lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !JOURNAL_HEADER.equals(lines.get(0))) {
+            // journal is written to temp file and renamed, so it can not be partial
+            throw new IOException("restart journal " + journalFile.getAbsolutePath() + " is corrupted");
+        }
+        List<Step> steps = new ArrayList<>();
+        Set<Integer> started = new HashSet<>();
+        boolean committed = false;
+        for (String line : lines.subList(1, lines.size())) {
+            if (COMMITTED.equals(line)) {
+                committed = true;
+            } else if (line.startsWith(STARTED + "\t") && line.length() > STARTED.length() + 1) {
+                started.add(Integer.valueOf(line.substring(STARTED.length() + 1)));
+            } else if (STARTED.startsWith(line) || COMMITTED.startsWith(line) || line.equals(STARTED + "\t")) {
+                // appended lines may be torn by a crash, such a step has not touched any file yet
+            } else {
+                steps.add(Step.parse(line));
+            }
+        }
+        if (committed) {
+            if (interrupted) {
+                logger.info("completing interrupted restart");
+            }
+            Files.deleteIfExists(operationsFile.toPath());
+            cleanup(steps);
+        } else {
+            if (interrupted) {
+                logger.warning("rolling back interrupted restart");
+            }
+            steps.removeIf(step -> !started.contains(step.index));
+            rollback(steps);
+            Files.deleteIfExists(journalFile.toPath());
+        }
+    }
+
+    private static List<Step> plan(List<RestartOperation> operations) throws IOException {
+        List<Step> result = new ArrayList<>();
+        for (RestartOperation op : operations) {
+            Step step = new Step();
+            step.index = result.size();
+            if (op instanceof DeleteOperation) {
+                step.type = StepType.DELETE;
+                step.source = ((DeleteOperation) op).file.getAbsoluteFile().toPath();
+                step.backup = step.source.resolveSibling(step.source.getFileName() + BACKUP_SUFFIX + step.index);
+            } else if (op instanceof MoveOperation) {
+                MoveOperation mop = (MoveOperation) op;
+                step.type = StepType.MOVE;
+                step.source = mop.from.getAbsoluteFile().toPath();
+                step.target = mop.to.getAbsoluteFile().toPath();
+                step.backup = step.target.resolveSibling(step.target.getFileName() + BACKUP_SUFFIX + step.index);
+            } else if (op instanceof ApplyPatchOperation) {
+                ApplyPatchOperation pop = (ApplyPatchOperation) op;
+                step.type = StepType.PATCH;
+                step.source = pop.patch.getAbsoluteFile().toPath();
+                step.target = pop.file.getAbsoluteFile().toPath();
+                step.backup = step.target.resolveSibling(step.target.getFileName() + BACKUP_SUFFIX + step.index);
+            } else if (op instanceof SleepOperation) {
+                step.type = StepType.SLEEP;
+                step.duration = ((SleepOperation) op).duration;
+            } else {
+                throw new IllegalArgumentException("unsupported restart operation " + op.getClass().getName());
+            }
+            if (step.backup != null) {
+                Files.deleteIfExists(step.backup);
+            }
+            if (step.type == StepType.PATCH) {
+                Files.deleteIfExists(step.getPatchedFile());
+            }
+            result.add(step);
+        }
+        return result;
+    }
+
+    private void applyWave(List<Step> wave) throws IOException, InterruptedException {
+        if (wave.isEmpty()) {
+            return;
+        }
+        // a step that shares no path with an earlier step of the wave finds the file system as it is now
+        Set<Path> touched = new HashSet<>();
+        List<Step> independent = new ArrayList<>();
+        for (Step step : wave) {
+            boolean dependent = false;
+            for (Path path : step.getPaths()) {
+                dependent |= !touched.add(path);
+            }
+            if (!dependent) {
+                step.checkPreconditions();
+                independent.add(step);
+            }
+        }
+        markStarted(independent);
+        List<List<Step>> chains = toChains(wave);
+        if (chains.size() == 1) {
+            for (Step step : chains.get(0)) {
+                applyStep(step);
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(chains.size(), MAX_PARALLELISM));
+            try {
+                List<Future<Void>> futures = new ArrayList<>();
+                for (List<Step> chain : chains) {
+                    futures.add(pool.submit(() -> {
+                        for (Step step : chain) {
+                            applyStep(step);
+                        }
+                        return null;
+                    }));
+                }
+                // all chains have to finish before a possible rollback
+                Exception error = null;
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        if (error == null) {
+                            error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                        }
+                    }
+                }
+                if (error instanceof IOException) {
+                    throw (IOException) error;
+                }
+                if (error != null) {
+                    throw new IOException("unable to apply restart operation", error);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Step step : wave) {
+            step.collectDirectories(directories);
+        }
+        for (Path directory : directories) {
+            SjlUtils.fsyncDirectory(directory);
+        }
+    }
+
+    private void applyStep(Step step) throws IOException {
+        if (!step.started) {
+            // preconditions depend on earlier steps of the chain, so the step is checked and marked after them
+            step.checkPreconditions();
+            markStarted(Collections.singletonList(step));
+        }
+        step.apply();
+    }
+
+    /*
+     * synced before the steps touch any file, so recovery never undoes a step that did not run
+     */
+    private void markStarted(List<Step> steps) throws IOException {
+        if (steps.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Step step : steps) {
+            sb.append(STARTED).append('\t').append(step.index).append('\n');
+        }
+        append(sb.toString(), false);
+        for (Step step : steps) {
+            step.started = true;
+        }
+    }
+
+    /*
+     * steps that touch the same path are kept in one chain in their original order
+     */
+    private static List<List<Step>> toChains(List<Step> wave) {
+        Map<Path, List<Step>> chainByPath = new HashMap<>();
+        List<List<Step>> chains = new ArrayList<>();
+        for (Step step : wave) {
+            List<Step> chain = null;
+            for (Path path : step.getPaths()) {
+                List<Step> other = chainByPath.get(path);
+                if (other == null || other == chain) {
+                    continue;
+                }
+                if (chain == null) {
+                    chain = other;
+                } else {
+                    chain.addAll(other);
+                    chains.remove(other);
+                    for (Step moved : other) {
+                        for (Path movedPath : moved.getPaths()) {
+                            chainByPath.put(movedPath, chain);
+                        }
+                    }
+                }
+            }
+            if (chain == null) {
+                chain = new ArrayList<>();
+                chains.add(chain);
+            }
+            chain.add(step);
+            for (Path path : step.getPaths()) {
+                chainByPath.put(path, chain);
+            }
+        }
+        for (List<Step> chain : chains) {
+            chain.sort((a, b) -> Integer.compare(a.index, b.index));
+        }
+        return chains;
+    }
+
+    private static void rollback(List<Step> steps) throws IOException {
+        List<Step> reversed = new ArrayList<>(steps);
+        Collections.reverse(reversed);
+        IOException error = null;
+        for (Step step : reversed) {
+            try {
+                step.rollback();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void cleanup(List<Step> steps) throws IOException {
+        for (Step step : steps) {
+            if (step.backup != null) {
+                deleteRecursively(step.backup.toFile());
+            }
+        }
+        closeJournal();
+        Files.deleteIfExists(journalFile.toPath());
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private void writeJournal(List<Step> steps) throws IOException {
+        StringBuilder sb = new StringBuilder(JOURNAL_HEADER).append('\n');
+        for (Step step : steps) {
+            sb.append(step.format()).append('\n');
+        }
+        Path tmp = new File(journalFile.getPath() + ".tmp").toPath();
+        Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+        SjlUtils.fsync(tmp);
+        SjlUtils.atomicMove(tmp, journalFile.toPath());
+        SjlUtils.fsyncDirectory(journalFile.getAbsoluteFile().getParentFile().toPath());
+        journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void commitJournal() throws IOException {
+        append(COMMITTED + "\n", true);
+    }
+
+    /*
+     * chains of a wave append from several threads, writes and syncs of a channel are thread safe
+     */
+    private void append(String records, boolean metadata) throws IOException {
+        FileChannel channel = journal;
+        if (channel == null) {
+            // journal left open by another executor, e.g. by the instance that handed over
+            channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            journal = channel;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(metadata);
+    }
+
+    private void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    enum StepType {
+        MOVE, DELETE, PATCH, SLEEP
+    }
+
+    static class Step {
+        int index;
+        StepType type;
+        Path source;
+        Path target;
+        Path backup;
+        long duration;
+        volatile boolean started;
+
+        /*
+         * rollback recognizes an applied step by a missing source, so a step is not started without it
+         */
+        void checkPreconditions() throws IOException {
+            switch (type) {
+                case MOVE:
+                    if (!Files.exists(source)) {
+                        throw new NoSuchFileException(source.toString(), null, "file to move does not exist");
+                    }
+                    break;
+                case PATCH:
+                    if (!Files.exists(target)) {
+                        throw new NoSuchFileException(target.toString(), null, "file to patch does not exist");
+                    }
+                    if (!Files.exists(source)) {
+                        throw new NoSuchFileException(source.toString(), null, "patch does not exist");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void apply() throws IOException {
+            switch (type) {
+                case MOVE:
+                    if (Files.exists(target)) {
+                        SjlUtils.atomicMove(target, backup);
+                    }
+                    Path parent = target.getParent();
+                    if (parent != null) {
+                        Files.createDirectories(parent);
+                    }
+                    SjlUtils.atomicMove(source, target);
+                    break;
+                case DELETE:
+                    if (Files.exists(source)) {
+                        SjlUtils.atomicMove(source, backup);
+                    }
+                    break;
+                case PATCH:
+                    // patched file is complete, synced and verified before the original is replaced
+                    SjlDeltaPatch.apply(target.toFile(), source.toFile(), getPatchedFile().toFile());
+                    SjlUtils.atomicMove(target, backup);
+                    SjlUtils.atomicMove(getPatchedFile(), target);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        Path getPatchedFile() {
+            return target.resolveSibling(target.getFileName() + PATCHED_SUFFIX + index);
+        }
+
+        /*
+         * idempotent, state of the step is recognized by existence of its files
+         */
+        void rollback() throws IOException {
+            switch (type) {
+                case MOVE:
+                    if (!Files.exists(source) && Files.exists(target)) {
+                        SjlUtils.atomicMove(target, source);
+                    }
+                    if (Files.exists(backup)) {
+                        SjlUtils.atomicMove(backup, target);
+                    }
+                    break;
+                case DELETE:
+                    if (Files.exists(backup)) {
+                        SjlUtils.atomicMove(backup, source);
+                    }
+                    break;
+                case PATCH:
+                    Files.deleteIfExists(getPatchedFile());
+                    if (Files.exists(backup)) {
+                        SjlUtils.atomicMove(backup, target);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        List<Path> getPaths() {
+            List<Path> result = new ArrayList<>();
+            result.add(source);
+            if (target != null) {
+                result.add(target);
+            }
+            return result;
+        }
+
+        void collectDirectories(Set<Path> directories) {
+            for (Path path : getPaths()) {
+                if (path.getParent() != null) {
+                    directories.add(path.getParent());
+                }
+            }
+        }
+
+        String format() {
+            switch (type) {
+                case MOVE:
+                case PATCH:
+                    return type + "\t" + index + "\t" + source + "\t" + target + "\t" + backup;
+                case DELETE:
+                    return type + "\t" + index + "\t" + source + "\t" + backup;
+                default:
+                    return type + "\t" + index + "\t" + duration;
+            }
+        }
+
+        static Step parse(String line) throws IOException {
+            String[] parts = line.split("\t");
+            Step step = new Step();
+            try {
+                step.type = StepType.valueOf(parts[0]);
+                step.index = Integer.parseInt(parts[1]);
+                switch (step.type) {
+                    case MOVE:
+                    case PATCH:
+                        step.source = new File(parts[2]).toPath();
+                        step.target = new File(parts[3]).toPath();
+                        step.backup = new File(parts[4]).toPath();
+                        break;
+                    case DELETE:
+                        step.source = new File(parts[2]).toPath();
+                        step.backup = new File(parts[3]).toPath();
+                        break;
+                    default:
+                        step.duration = Long.parseLong(parts[2]);
+                        break;
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("wrong restart journal line " + line, e);
+            }
+            return step;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.restart;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/*
+ * Update bundle created by the delta task of the dist gradle plugin: zip with update.lst
+ * that lists PATCH, ADD and DELETE operations for paths relative to distribution directory.
+ */
+public final class SjlUpdateBundle {
+
+    /*
+     * extracts bundle into work directory and returns restart operations that apply it
+     */
+    public static List<RestartOperation> prepare(File bundleFile, File distributionDirectory, File workDirectory) throws IOException {
+        List<RestartOperation> result = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(bundleFile)) {
+            ZipEntry listEntry = zip.getEntry("update.lst");
+            if (listEntry == null) {
+                throw new IOException(bundleFile.getAbsolutePath() + " is not an update bundle");
+            }
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(listEntry), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        lines.add(line);
+                    }
+                }
+            }
+            for (String line : lines) {
+                String[] parts = line.split("\t");
+                File target = resolve(distributionDirectory, parts[1]);
+                switch (parts[0]) {
+                    case "PATCH": {
+                        File patch = resolve(new File(workDirectory, "patches"), parts[1]);
+                        extract(zip, "patches/" + parts[1], patch, null);
+                        result.add(new ApplyPatchOperation(target, patch));
+                        break;
+                    }
+                    case "ADD": {
+                        File file = resolve(new File(workDirectory, "files"), parts[1]);
+                        extract(zip, "files/" + parts[1], file, parts[2]);
+                        result.add(new MoveOperation(file, target));
+                        break;
+                    }
+                    case "DELETE":
+                        result.add(new DeleteOperation(target));
+                        break;
+                    default:
+                        throw new IOException("unsupported update operation " + line);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static File resolve(File root, String relativePath) throws IOException {
+        File result = new File(root, relativePath);
+        if (!result.getCanonicalPath().startsWith(root.getCanonicalPath() + File.separator)) {
+            throw new IOException("path " + relativePath + " is outside of " + root.getAbsolutePath());
+        }
+        return result;
+    }
+
+    private static void extract(ZipFile zip, String entryName, File target, String expectedHash) throws IOException {
+        ZipEntry entry = zip.getEntry(entryName);
+        if (entry == null) {
+            throw new IOException("entry " + entryName + " is missing in update bundle");
+        }
+        File parent = target.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("unable to create dir " + parent.getAbsolutePath());
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream is = zip.getInputStream(entry);
+             OutputStream os = new DigestOutputStream(Files.newOutputStream(target.toPath()), digest)) {
+            byte[] buffer = new byte[64 * 1024];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                os.write(buffer, 0, len);
+            }
+        }
+        if (expectedHash != null && !expectedHash.equals(toHex(digest.digest()))) {
+            throw new IOException("hash of " + entryName + " does not match update list");
+        }
+    }
+
+    private static String toHex(byte[] data) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : data) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -21,8 +21,49 @@
 
 package com.vga.sjl.utils;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
 public final class SjlUtils {
 
+    public static void fsync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /*
+     * makes renames inside the directory durable, ignored on platforms where directories can not be opened
+     */
+    public static void fsyncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //noops
+        }
+    }
+
+    /*
+     * renames file replacing target, if source and target are on different file systems
+     * the file is copied next to target and then renamed
+     */
+    public static void atomicMove(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Path tmp = to.resolveSibling(to.getFileName() + ".sjl-tmp");
+            Files.copy(from, tmp, StandardCopyOption.REPLACE_EXISTING);
+            fsync(tmp);
+            Files.move(tmp, to, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(from);
+        }
+    }
+
     public static String prepareLogMessage(String message, Throwable t) {
         StringBuilder sb = new StringBuilder(message);
         printError(t, null, sb);
@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.config.test;
+
+import com.vga.sjl.config.AppConfiguration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BatchUpdateTest {
+
+    @Test
+    public void testSetProperties() throws IOException {
+        check(new File("temp/batch/config.yml"), "simpleProperty: 123\nsubconfig:\n  key: simple key\n  value: simple value\nother:\n  key: other key\n", true);
+        check(new File("temp/batch/config.properties"), "simpleProperty=123\nsubconfig.key=simple key\nsubconfig.value=simple value\nother.key=other key\nlate.value=1\nlate=2\n", false);
+    }
+
+    private static void check(File file, String content, boolean yaml) throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        AppConfiguration config = yaml ? AppConfiguration.fromYaml(file) : AppConfiguration.fromProperties(file);
+        Object other = config.getSubConfiguration("other");
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int n = 0; n < 500; n++) {
+            values.put("generated.key" + n, "value " + n);
+        }
+        values.put("subconfig.value", "simple value 2");
+        config.setProperties(values);
+        Assertions.assertEquals("value 499", config.getValue("generated.key499"));
+        Assertions.assertEquals("simple value 2", config.getSubConfiguration("subconfig").getValue("value"));
+        Assertions.assertEquals("simple key", config.getValue("subconfig.key"));
+        Assertions.assertSame(other, config.getSubConfiguration("other"));
+        // shared subtree reads the index of the patched tree
+        Assertions.assertEquals("other key", config.getSubConfiguration("other").getValue("key"));
+        Assertions.assertEquals("value 7", config.getSubConfiguration("generated").getValue("key7"));
+        config.setProperty("subconfig.key", "simple key 2");
+        Assertions.assertEquals("simple key 2", config.getValue("subconfig.key"));
+        // values overlapping with other values
+        values.clear();
+        values.put("simpleProperty.nested", "replaced");
+        values.put("late.value", "3");
+        config.setProperties(values);
+        Assertions.assertEquals("replaced", config.getValue("simpleProperty.nested"));
+        config.save(file);
+        Assertions.assertFalse(config.isDirty());
+        // patched tree must be equal to the tree parsed from the saved file, so only the external change is reported
+        Files.write(file.toPath(), (yaml ? "external: 1\n" : "external=1\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Assertions.assertEquals(Collections.singleton("external"), config.reload());
+        Assertions.assertEquals("1", config.getValue("external"));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.config.test;
+
+import com.vga.sjl.config.AppConfiguration;
+import com.vga.sjl.config.ConfigKey;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ConfigKeyTest {
+
+    private static final ConfigKey<Integer> PORT = ConfigKey.ofInteger("server.port", 8080);
+
+    private static final ConfigKey<Long> BUFFER = ConfigKey.ofByteSize("server.buffer", 1024L);
+
+    private static final ConfigKey<Duration> TIMEOUT = ConfigKey.ofDuration("server.timeout", Duration.ofSeconds(1));
+
+    private static final ConfigKey<List<Duration>> RETRIES = ConfigKey.ofDurationList("server.retries", Collections.emptyList());
+
+    private static final ConfigKey<List<Integer>> PORTS = ConfigKey.ofIntegerList("server.ports", Collections.emptyList());
+
+    @Test
+    public void testKeys() {
+        AppConfiguration config = AppConfiguration.fromYaml(new ByteArrayInputStream(
+                "server:\n  buffer: 64kb\n  timeout: 5s\n  retries:\n    - 100\n    - 2m\n  ports: 80, 443\n".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(8080, PORT.get(config));
+        Assertions.assertEquals(64 * 1024L, BUFFER.get(config));
+        Assertions.assertEquals(Duration.ofSeconds(5), TIMEOUT.get(config));
+        Assertions.assertEquals(Arrays.asList(Duration.ofMillis(100), Duration.ofMinutes(2)), RETRIES.get(config));
+        Assertions.assertEquals(Arrays.asList(80, 443), PORTS.get(config));
+        Assertions.assertSame(RETRIES.get(config), RETRIES.get(config));
+        long version = config.getVersion();
+        config.setProperty("server.port", "9090");
+        config.setProperty("server.buffer", "2M");
+        config.setProperty("server.timeout", "PT1M");
+        Assertions.assertTrue(config.getVersion() > version);
+        Assertions.assertEquals(9090, PORT.get(config));
+        Assertions.assertEquals(2 * 1024 * 1024L, BUFFER.get(config));
+        Assertions.assertEquals(Duration.ofMinutes(1), TIMEOUT.get(config));
+        config.setProperty("server.timeout", "5 parsecs");
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> TIMEOUT.get(config));
+        Assertions.assertTrue(e.getMessage().contains("server.timeout"));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.config.test;
+
+import com.vga.sjl.config.AppConfiguration;
+import com.vga.sjl.config.ConfigKey;
+import com.vga.sjl.config.SjlConfigSnapshot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LayersTest {
+
+    @Test
+    public void testLayers() throws IOException {
+        File file = new File("temp/layers/config.properties");
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        write(file, "sjl.profiles=dev\nsjl.controlPort=21000\nsjl.control-timeout=10\nserver.host=localhost\n");
+        write(new File(file.getParentFile(), "config-dev.properties"), "server.host=dev.local\n");
+        AppConfiguration config = AppConfiguration.fromProperties(file);
+        Assertions.assertEquals(Collections.singletonList("dev"), config.getProfiles());
+        Assertions.assertEquals("dev.local", config.computeValue("server.host", null));
+        Assertions.assertEquals("localhost", config.getValue("server.host"));
+        Assertions.assertEquals("21000", config.computeValue("sjl.controlPort", null));
+        Assertions.assertEquals("10", config.computeValue("sjl.control-timeout", null));
+        Assertions.assertNull(config.computeValue("sjl.controlTimeout", null));
+        Assertions.assertNull(config.computeValue("server.port", null));
+        config.setDefaultValue("server.port", "8080");
+        Assertions.assertEquals("8080", config.computeValue("server.port", null));
+        ConfigKey<Integer> port = ConfigKey.ofInteger("server.port", null);
+        Assertions.assertEquals(8080, port.get(config));
+        System.setProperty("SERVER_PORT", "9090");
+        try {
+            Assertions.assertEquals("8080", config.computeValue("server.port", null));
+        } finally {
+            System.clearProperty("SERVER_PORT");
+        }
+        System.setProperty("server.port", "9090");
+        try {
+            Assertions.assertEquals(8080, port.get(config));
+            config.refresh();
+            Assertions.assertEquals("9090", config.computeValue("server.port", null));
+            Assertions.assertEquals(9090, port.get(config));
+        } finally {
+            System.clearProperty("server.port");
+        }
+        config.refresh();
+        Assertions.assertEquals(8080, port.get(config));
+        write(new File(file.getParentFile(), "config-dev.properties"), "server.host=dev2.local\n");
+        Assertions.assertEquals(Collections.singleton("server.host"), config.reload());
+        Assertions.assertEquals("dev2.local", config.computeValue("server.host", null));
+    }
+
+    @Test
+    public void testCollidingNames() throws IOException {
+        File file = new File("temp/layers/colliding.properties");
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        write(file, "username=app\npath=/app/bin\nhome=/app\n");
+        AppConfiguration config = AppConfiguration.fromProperties(file);
+        Assertions.assertEquals("app", config.computeValue("username", null));
+        Assertions.assertEquals("/app/bin", config.computeValue("path", null));
+        Assertions.assertEquals("/app", config.computeValue("home", null));
+        Assertions.assertNull(config.computeValue("Path", null));
+    }
+
+    @Test
+    public void testEnvironmentBinding() {
+        Map<String, String> file = new HashMap<>();
+        file.put("sjl.controlPort", "21000");
+        file.put("sjl.control-timeout", "10");
+        file.put("username", "app");
+        file.put("path", "/app/bin");
+        file.put("server.host", "file.local");
+        Map<String, String> overlay = Collections.singletonMap("server.host", "overlay.local");
+        Map<String, String> environment = new HashMap<>();
+        environment.put("SJL_CONTROLPORT", "31000");
+        environment.put("SJL_CONTROLTIMEOUT", "20");
+        environment.put("USERNAME", "root");
+        environment.put("PATH", "/usr/bin");
+        environment.put("SERVER_HOST", "relaxed.local");
+        environment.put("server.host", "exact.local");
+        environment.put("SERVER_PORT", "8080");
+        SjlConfigSnapshot snapshot = SjlConfigSnapshot.build(Arrays.asList(file, overlay), environment, Collections.singletonMap("username", "system"));
+        Assertions.assertEquals("31000", snapshot.get("sjl.controlPort"));
+        Assertions.assertEquals("20", snapshot.get("sjl.control-timeout"));
+        Assertions.assertEquals("system", snapshot.get("username"));
+        Assertions.assertEquals("/app/bin", snapshot.get("path"));
+        Assertions.assertEquals("exact.local", snapshot.get("server.host"));
+        Assertions.assertEquals("8080", snapshot.get("server.port"));
+        Assertions.assertEquals("8080", snapshot.get("server.port"));
+        Assertions.assertNull(snapshot.get("server.address"));
+        Assertions.assertNull(snapshot.get("serverport"));
+        Assertions.assertNull(snapshot.get("home"));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
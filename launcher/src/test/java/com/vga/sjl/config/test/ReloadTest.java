@@ -0,0 +1,62 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.config.test;
+
+import com.vga.sjl.config.AppConfiguration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class ReloadTest {
+
+    @Test
+    public void testReload() throws IOException {
+        File file = new File("temp/reload.yml");
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        write(file, "simpleProperty: 123\nsimpleCollection:\n  - item 1\nsystemProperties:\n  com.vga.sjl.key: value\nsubconfig:\n  key: simple key\n  value: simple value\n");
+        AppConfiguration config = AppConfiguration.fromYaml(file);
+        List<Set<String>> allChanges = new ArrayList<>();
+        List<Set<String>> subconfigChanges = new ArrayList<>();
+        config.addChangeListener((configuration, keys) -> allChanges.add(keys));
+        config.addChangeListener("subconfig", (configuration, keys) -> subconfigChanges.add(keys));
+        Assertions.assertTrue(config.reload().isEmpty());
+        Assertions.assertTrue(allChanges.isEmpty());
+        write(file, "simpleProperty: 123\nsimpleCollection:\n  - item 1\n  - item 2\nsystemProperties:\n  com.vga.sjl.key: value 2\nsubconfig:\n  key: simple key\n  value: simple value 2\n  extra: 1\n");
+        Set<String> expected = new TreeSet<>(Arrays.asList("simpleCollection", "systemProperties.[com.vga.sjl.key]", "subconfig.value", "subconfig.extra"));
+        Assertions.assertEquals(expected, config.reload());
+        Assertions.assertEquals(Collections.singletonList(expected), allChanges);
+        Assertions.assertEquals(Collections.singletonList(new TreeSet<>(Arrays.asList("subconfig.value", "subconfig.extra"))), subconfigChanges);
+        Assertions.assertEquals("value 2", config.getValue("systemProperties.[com.vga.sjl.key]"));
+        write(file, "simpleProperty: [broken\n");
+        Assertions.assertThrows(Exception.class, config::reload);
+        Assertions.assertEquals("simple value 2", config.getValue("subconfig.value"));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.config.test;
+
+import com.vga.sjl.config.AppConfiguration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class SaveTest {
+
+    @Test
+    public void testSaveAsync() throws Exception {
+        File file = new File("temp/save/config.yml");
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), "#comment\nsubconfig:\n  value: 0\n".getBytes(StandardCharsets.UTF_8));
+        AppConfiguration config = AppConfiguration.fromYaml(file);
+        config.setAutoSave(Duration.ofMinutes(1));
+        for (int n = 1; n <= 100; n++) {
+            config.setProperty("subconfig.value", String.valueOf(n));
+        }
+        Assertions.assertTrue(config.isDirty());
+        // explicit request does not wait for the automatic save
+        config.saveAsync().get(10, TimeUnit.SECONDS);
+        Assertions.assertFalse(config.isDirty());
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        Assertions.assertTrue(content.contains("#comment"));
+        Assertions.assertEquals("100", AppConfiguration.fromYaml(file).getValue("subconfig.value"));
+        Assertions.assertFalse(new File(file.getPath() + ".tmp").exists());
+        config.setAutoSave(Duration.ofMillis(50));
+        config.setProperty("subconfig.value", "101");
+        config.flush();
+        Assertions.assertEquals("101", AppConfiguration.fromYaml(file).getValue("subconfig.value"));
+    }
+
+    @Test
+    public void testReloadKeepsUnsavedChanges() throws Exception {
+        File file = new File("temp/save/reload.yml");
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), "subconfig:\n  value: 0\n".getBytes(StandardCharsets.UTF_8));
+        AppConfiguration config = AppConfiguration.fromYaml(file);
+        List<Set<String>> changes = new ArrayList<>();
+        config.addChangeListener((cfg, keys) -> changes.add(keys));
+        config.setAutoSave(Duration.ofMinutes(1));
+        config.setProperty("subconfig.value", "1");
+        config.flush();
+        config.setProperty("subconfig.value", "2");
+        // the watcher reports the save while the next change is pending
+        Assertions.assertTrue(config.reload().isEmpty());
+        Assertions.assertEquals("2", config.getValue("subconfig.value"));
+        Assertions.assertTrue(config.isDirty());
+        config.flush();
+        Assertions.assertTrue(config.reload().isEmpty());
+        Assertions.assertEquals("2", config.getValue("subconfig.value"));
+        Assertions.assertTrue(changes.isEmpty());
+        Files.write(file.toPath(), "subconfig:\n  value: 3\n".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(Collections.singleton("subconfig.value"), config.reload());
+        Assertions.assertEquals("3", config.getValue("subconfig.value"));
+    }
+}
@@ -54,4 +54,21 @@ public class YamlTest {
         String content = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
         Assertions.assertTrue(content.contains("value: simple value 2"));
     }
+
+    @Test
+    public void testLookups() throws IOException {
+        AppConfiguration config;
+        try(InputStream is = getClass().getClassLoader().getResourceAsStream("simple.yml")){
+            config = AppConfiguration.fromYaml(is);
+        }
+        Assertions.assertEquals("simple key" , config.getValue("subconfig.key"));
+        Assertions.assertEquals("simple key" , config.getValue(".subconfig..key"));
+        Assertions.assertEquals("value" , config.getSubConfiguration("systemProperties").getValue("[com.vga.sjl.key]"));
+        Assertions.assertNull(config.getValue("subconfig.missing"));
+        Assertions.assertTrue(config.getValues("missing").isEmpty());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> config.getValue("subconfig"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> config.getValue("simpleProperty.value"));
+        config.setProperty("subconfig.value", "simple value 3");
+        Assertions.assertEquals("simple value 3" , config.getValue("subconfig.value"));
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.metrics.test;
+
+import com.vga.sjl.BootPhase;
+import com.vga.sjl.boot.SjlBootReport;
+import com.vga.sjl.metrics.Counter;
+import com.vga.sjl.metrics.SjlMetricsRegistry;
+import com.vga.sjl.metrics.SjlMetricsWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class MetricsTest {
+
+    @Test
+    public void testRender() {
+        SjlBootReport report = new SjlBootReport();
+        try (BootPhase ignored = report.startPhase("start")) {
+            report.startPhase("db").close();
+        }
+        SjlMetricsRegistry registry = new SjlMetricsRegistry(report);
+        Counter counter = registry.counter("app_requests_total", "Handled requests.");
+        Assertions.assertSame(counter, registry.counter("app_requests_total", null));
+        counter.add(41);
+        counter.increment();
+        SjlMetricsWriter writer = new SjlMetricsWriter();
+        registry.render(writer);
+        writer.reset();
+        registry.render(writer);
+        String text = new String(writer.toByteArray(), StandardCharsets.UTF_8);
+        Assertions.assertTrue(text.contains("# TYPE app_requests_total counter\napp_requests_total 42\n"));
+        Assertions.assertTrue(text.contains("jvm_memory_bytes_used{area=\"heap\"} "));
+        Assertions.assertTrue(text.contains("sjl_boot_phase_seconds{phase=\"start/db\"} 0."));
+        Assertions.assertEquals(1, text.split("sjl_boot_phase_seconds\\{phase=\"start\"}", -1).length - 1);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.counter("app requests", null));
+    }
+
+    @Test
+    public void testWriter() {
+        SjlMetricsWriter writer = new SjlMetricsWriter();
+        writer.append(-1234567890123L).append(' ').appendSeconds(1500000000L).append(' ').appendSeconds(42000L).append(' ').appendLabelValue("a\"b\\c");
+        Assertions.assertEquals("-1234567890123 1.500000 0.000042 a\\\"b\\\\c", new String(writer.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.vga.sjl.restart.test;
+
+import com.vga.sjl.restart.ApplyPatchOperation;
+import com.vga.sjl.restart.DeleteOperation;
+import com.vga.sjl.restart.MoveOperation;
+import com.vga.sjl.restart.RestartOperation;
+import com.vga.sjl.restart.SjlRestartExecutor;
+import com.vga.sjl.restart.SleepOperation;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class RestartExecutorTest {
+
+    private final File dir = new File("temp/restart-test");
+
+    private final File tempDir = new File(dir, "temp");
+
+    private final File libDir = new File(dir, "lib");
+
+    @BeforeEach
+    public void prepare() throws IOException {
+        deleteRecursively(dir);
+        Assertions.assertTrue(tempDir.mkdirs());
+        Assertions.assertTrue(libDir.mkdirs());
+    }
+
+    @Test
+    public void testPendingOperations() throws IOException {
+        write(new File(libDir, "app-1.jar"), "old app");
+        write(new File(libDir, "obsolete.jar"), "obsolete");
+        write(new File(tempDir, "app-2.jar"), "new app");
+        write(new File(tempDir, "util.jar"), "util");
+        write(new File(tempDir, "renamed.jar"), "renamed");
+        List<RestartOperation> operations = Arrays.asList(
+                new MoveOperation(new File(tempDir, "app-2.jar"), new File(libDir, "app-1.jar")),
+                new DeleteOperation(new File(libDir, "obsolete.jar")),
+                new MoveOperation(new File(tempDir, "util.jar"), new File(libDir, "util.jar")),
+                new SleepOperation(10),
+                new MoveOperation(new File(tempDir, "renamed.jar"), new File(libDir, "util.jar")));
+        SjlRestartExecutor executor = new SjlRestartExecutor(tempDir);
+        executor.save(operations);
+        Assertions.assertEquals(5, SjlRestartExecutor.load(executor.getOperationsFile()).size());
+        executor.executePending();
+        Assertions.assertEquals("new app", read(new File(libDir, "app-1.jar")));
+        Assertions.assertEquals("renamed", read(new File(libDir, "util.jar")));
+        Assertions.assertFalse(new File(libDir, "obsolete.jar").exists());
+        Assertions.assertEquals(2, libDir.list().length);
+        Assertions.assertEquals(0, tempDir.list().length);
+    }
+
+    @Test
+    public void testRollbackOnFailure() throws IOException {
+        write(new File(libDir, "app.jar"), "old app");
+        write(new File(libDir, "obsolete.jar"), "obsolete");
+        write(new File(tempDir, "app.jar"), "new app");
+        SjlRestartExecutor executor = new SjlRestartExecutor(tempDir);
+        executor.save(Arrays.asList(
+                new MoveOperation(new File(tempDir, "app.jar"), new File(libDir, "app.jar")),
+                new DeleteOperation(new File(libDir, "obsolete.jar")),
+                new SleepOperation(1),
+                new MoveOperation(new File(tempDir, "missing.jar"), new File(libDir, "missing.jar"))));
+        executor.executePending();
+        Assertions.assertEquals("old app", read(new File(libDir, "app.jar")));
+        Assertions.assertEquals("new app", read(new File(tempDir, "app.jar")));
+        Assertions.assertEquals("obsolete", read(new File(libDir, "obsolete.jar")));
+        Assertions.assertEquals(2, libDir.list().length);
+        Assertions.assertFalse(executor.getOperationsFile().exists());
+        Assertions.assertTrue(new File(tempDir, "restart.dat.failed").exists());
+        Assertions.assertFalse(new File(tempDir, "restart.journal").exists());
+    }
+
+    @Test
+    public void testInterruptedRun() throws IOException {
+        File source = new File(tempDir, "app.jar");
+        File target = new File(libDir, "app.jar");
+        File backup = new File(libDir, "app.jar.sjl-backup-0");
+        SjlRestartExecutor executor = new SjlRestartExecutor(tempDir);
+        write(source, "new app");
+        executor.save(Arrays.asList(new MoveOperation(source, target), new DeleteOperation(new File(libDir, "obsolete.jar"))));
+        // state of a run that was interrupted after the first step
+        write(target, "new app");
+        write(backup, "old app");
+        write(new File(libDir, "obsolete.jar"), "obsolete");
+        Assertions.assertTrue(source.delete());
+        write(new File(tempDir, "restart.journal"), "SJL-RESTART-JOURNAL 1\n"
+                + "MOVE\t0\t" + source.getAbsolutePath() + "\t" + target.getAbsolutePath() + "\t" + backup.getAbsolutePath() + "\n"
+                + "DELETE\t1\t" + new File(libDir, "obsolete.jar").getAbsolutePath() + "\t" + new File(libDir, "obsolete.jar.sjl-backup-1").getAbsolutePath() + "\n"
+                + "STARTED\t0\n");
+        executor.executePending();
+        Assertions.assertEquals("new app", read(target));
+        Assertions.assertEquals(1, libDir.list().length);
+        Assertions.assertEquals(0, tempDir.list().length);
+    }
+
+    @Test
+    public void testRollbackOfStepsNotStarted() throws Exception {
+        File a = new File(libDir, "a.jar");
+        File b = new File(libDir, "b.jar");
+        File c = new File(libDir, "c.jar");
+        write(c, "c");
+        SjlRestartExecutor executor = new SjlRestartExecutor(tempDir);
+        Assertions.assertThrows(IOException.class, () -> executor.execute(Arrays.asList(new MoveOperation(a, b), new MoveOperation(b, c))));
+        Assertions.assertEquals("c", read(c));
+        Assertions.assertFalse(a.exists());
+        Assertions.assertFalse(b.exists());
+        // the same run interrupted before its first step
+        write(new File(tempDir, "restart.journal"), "SJL-RESTART-JOURNAL 1\n"
+                + "MOVE\t0\t" + a.getAbsolutePath() + "\t" + b.getAbsolutePath() + "\t" + new File(libDir, "b.jar.sjl-backup-0").getAbsolutePath() + "\n"
+                + "MOVE\t1\t" + b.getAbsolutePath() + "\t" + c.getAbsolutePath() + "\t" + new File(libDir, "c.jar.sjl-backup-1").getAbsolutePath() + "\n"
+                + "STAR");
+        executor.executePending();
+        Assertions.assertEquals("c", read(c));
+        Assertions.assertEquals(1, libDir.list().length);
+        Assertions.assertFalse(new File(tempDir, "restart.journal").exists());
+    }
+
+    @Test
+    public void testDependentSteps() throws Exception {
+        File a = new File(libDir, "a.jar");
+        File b = new File(libDir, "b.jar");
+        File c = new File(libDir, "c.jar");
+        File d = new File(libDir, "d.jar");
+        write(a, "a");
+        write(c, "c");
+        write(d, "d");
+        SjlRestartExecutor executor = new SjlRestartExecutor(tempDir);
+        // b.jar appears only after the first step, so the second step is checked when its chain reaches it
+        executor.execute(Arrays.asList(new MoveOperation(a, b), new MoveOperation(b, c), new DeleteOperation(d)));
+        Assertions.assertEquals("a", read(c));
+        Assertions.assertEquals(1, libDir.list().length);
+        Assertions.assertEquals(0, tempDir.list().length);
+        // independent steps are checked before the wave starts, nothing is touched if one of them fails
+        write(a, "a");
+        Assertions.assertThrows(IOException.class, () -> executor.execute(Arrays.asList(new DeleteOperation(c), new MoveOperation(b, d))));
+        Assertions.assertEquals("a", read(c));
+        Assertions.assertEquals(2, libDir.list().length);
+        Assertions.assertFalse(new File(tempDir, "restart.journal").exists());
+    }
+
+    @Test
+    public void testApplyCommitAndRollback() throws Exception {
+        File target = new File(libDir, "app.jar");
+        write(target, "old app");
+        write(new File(tempDir, "app.jar"), "new app");
+        SjlRestartExecutor executor = new SjlRestartExecutor(tempDir);
+        executor.apply(Arrays.asList(new MoveOperation(new File(tempDir, "app.jar"), target)));
+        Assertions.assertEquals("new app", read(target));
+        executor.rollback();
+        Assertions.assertEquals("old app", read(target));
+        Assertions.assertEquals("new app", read(new File(tempDir, "app.jar")));
+        Assertions.assertEquals(1, libDir.list().length);
+        executor.apply(Arrays.asList(new MoveOperation(new File(tempDir, "app.jar"), target)));
+        executor.commit();
+        Assertions.assertEquals("new app", read(target));
+        Assertions.assertEquals(1, libDir.list().length);
+        Assertions.assertEquals(0, tempDir.list().length);
+        // nothing to commit or roll back
+        executor.commit();
+        executor.rollback();
+        Assertions.assertEquals("new app", read(target));
+    }
+
+    @Test
+    public void testApplyPatch() throws Exception {
+        File target = new File(libDir, "app.jar");
+        write(target, "hello world, hello patch");
+        File patch = new File(tempDir, "app.jar.patch");
+        writePatch(patch, "hello there, hello patch", 0, 6, "there", 11, 13);
+        File wrongPatch = new File(tempDir, "wrong.patch");
+        writePatch(wrongPatch, "hello there, hello patch", 0, 6, "where", 11, 13);
+        SjlRestartExecutor executor = new SjlRestartExecutor(tempDir);
+        executor.save(Arrays.asList(new ApplyPatchOperation(target, wrongPatch)));
+        executor.executePending();
+        Assertions.assertEquals("hello world, hello patch", read(target));
+        Assertions.assertEquals(1, libDir.list().length);
+        executor.save(Arrays.asList(new ApplyPatchOperation(target, patch)));
+        executor.executePending();
+        Assertions.assertEquals("hello there, hello patch", read(target));
+        Assertions.assertEquals(1, libDir.list().length);
+    }
+
+    private static void writePatch(File file, String expected, int copyOffset1, int copyLength1, String data, int copyOffset2, int copyLength2) throws IOException, NoSuchAlgorithmException {
+        byte[] result = expected.getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(0x534A4C44);
+            out.writeInt(1);
+            out.writeLong(result.length);
+            out.write(MessageDigest.getInstance("SHA-256").digest(result));
+            out.writeByte(1);
+            out.writeLong(copyOffset1);
+            out.writeInt(copyLength1);
+            out.writeByte(2);
+            out.writeInt(data.length());
+            out.write(data.getBytes(StandardCharsets.UTF_8));
+            out.writeByte(1);
+            out.writeLong(copyOffset2);
+            out.writeInt(copyLength2);
+            out.writeByte(0);
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}